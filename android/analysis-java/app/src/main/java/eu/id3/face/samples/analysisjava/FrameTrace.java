@@ -0,0 +1,155 @@
+package eu.id3.face.samples.analysisjava;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Records the duration of each stage of the frame processing, for all threads, in a ring
+ * buffer holding the last Parameters.frameTraceCapacity stages.
+ *
+ * A stage is measured with:
+ *     long begin = FrameTrace.begin();
+ *     ...
+ *     FrameTrace.end("detectFaces", begin);
+ * Stage names must be constants: recording a stage only stores numbers and references in
+ * preallocated arrays, so it can stay in the camera hot path.
+ *
+ * writeChromeTrace() saves the recorded stages as a JSON trace which can be opened in
+ * chrome://tracing or https://ui.perfetto.dev, one row per thread.
+ */
+public class FrameTrace {
+    private final static String LOG_TAG = "FrameTrace";
+    private final static int MAX_THREADS = 16;
+
+    private final static Object lock = new Object();
+    private final static String[] stages = new String[Parameters.frameTraceCapacity];
+    private final static long[] beginNanos = new long[Parameters.frameTraceCapacity];
+    private final static long[] endNanos = new long[Parameters.frameTraceCapacity];
+    private final static long[] frameIds = new long[Parameters.frameTraceCapacity];
+    private final static long[] threadIds = new long[Parameters.frameTraceCapacity];
+    private final static long[] knownThreadIds = new long[MAX_THREADS];
+    private final static String[] knownThreadNames = new String[MAX_THREADS];
+    private static int knownThreadCount = 0;
+    private static long recordCount = 0;
+    private static volatile long currentFrameId = 0;
+
+    private FrameTrace() {
+    }
+
+    /**
+     * Starts a new camera frame. The following stages are tagged with its number.
+     */
+    public static void beginFrame() {
+        currentFrameId++;
+    }
+
+    /**
+     * Returns the start time of a stage, to pass to end().
+     */
+    public static long begin() {
+        return Parameters.frameTraceEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a stage started at begin.
+     */
+    public static void end(String stage, long begin) {
+        if (!Parameters.frameTraceEnabled) {
+            return;
+        }
+        long end = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        long threadId = thread.getId();
+        synchronized (lock) {
+            int index = (int) (recordCount % stages.length);
+            stages[index] = stage;
+            beginNanos[index] = begin;
+            endNanos[index] = end;
+            frameIds[index] = currentFrameId;
+            threadIds[index] = threadId;
+            recordCount++;
+            registerThread(thread, threadId);
+        }
+    }
+
+    private static void registerThread(Thread thread, long threadId) {
+        for (int i = 0; i < knownThreadCount; i++) {
+            if (knownThreadIds[i] == threadId) {
+                return;
+            }
+        }
+        if (knownThreadCount < MAX_THREADS) {
+            knownThreadIds[knownThreadCount] = threadId;
+            knownThreadNames[knownThreadCount] = thread.getName();
+            knownThreadCount++;
+        }
+    }
+
+    /**
+     * Writes the recorded stages to file in the Chrome trace event format.
+     */
+    public static void writeChromeTrace(File file) throws IOException {
+        int count;
+        int first;
+        String[] stageCopy;
+        long[] beginCopy;
+        long[] endCopy;
+        long[] frameCopy;
+        long[] threadCopy;
+        long[] threadIdCopy;
+        String[] threadNameCopy;
+        synchronized (lock) {
+            count = (int) Math.min(recordCount, stages.length);
+            first = (int) ((recordCount - count) % stages.length);
+            stageCopy = stages.clone();
+            beginCopy = beginNanos.clone();
+            endCopy = endNanos.clone();
+            frameCopy = frameIds.clone();
+            threadCopy = threadIds.clone();
+            threadIdCopy = new long[knownThreadCount];
+            threadNameCopy = new String[knownThreadCount];
+            System.arraycopy(knownThreadIds, 0, threadIdCopy, 0, knownThreadCount);
+            System.arraycopy(knownThreadNames, 0, threadNameCopy, 0, knownThreadCount);
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8)) {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+            boolean firstEvent = true;
+            for (int i = 0; i < threadIdCopy.length; i++) {
+                writer.write(firstEvent ? "\n" : ",\n");
+                firstEvent = false;
+                writer.write(String.format(Locale.ROOT,
+                        "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":%d,"
+                                + "\"args\":{\"name\":\"%s\"}}",
+                        threadIdCopy[i], escape(threadNameCopy[i])));
+            }
+            for (int i = 0; i < count; i++) {
+                int index = (first + i) % stageCopy.length;
+                writer.write(firstEvent ? "\n" : ",\n");
+                firstEvent = false;
+                /* Timestamps and durations are in microseconds. */
+                writer.write(String.format(Locale.ROOT,
+                        "{\"name\":\"%s\",\"ph\":\"X\",\"pid\":0,\"tid\":%d,\"ts\":%.3f,"
+                                + "\"dur\":%.3f,\"args\":{\"frame\":%d}}",
+                        escape(stageCopy[index]), threadCopy[index],
+                        beginCopy[index] / 1000.0,
+                        (endCopy[index] - beginCopy[index]) / 1000.0,
+                        frameCopy[index]));
+            }
+            writer.write("\n]}\n");
+        }
+        Log.v(LOG_TAG, "Wrote " + count + " stages to " + file.getPath());
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -3,7 +3,6 @@ package eu.id3.face.samples.analysisjava;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.text.SpannableString;
@@ -42,6 +41,8 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
      * Face processor containing id3 Face SDK method calls for face detection and face recognition
      */
     private FaceProcessor faceProcessor;
+    /* Portrait bitmap rendered by the face processor and displayed, given back when replaced. */
+    private Bitmap displayedPortraitBitmap = null;
 
     /**
      * State variables
@@ -70,21 +71,37 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
         setupViewElements();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        /* Release the processors and unload the models. */
+        faceProcessor.close();
+    }
+
+    /**
+     * Displays a portrait rendered by the face processor, or the empty avatar if null, and
+     * gives the previously displayed bitmap back to the face processor.
+     */
+    private void showPortrait(Bitmap portraitBitmap) {
+        if (portraitBitmap != null) {
+            portraitFaceView.setImageBitmap(portraitBitmap);
+        } else {
+            portraitFaceView.setImageResource(R.drawable.empty_avatar);
+        }
+        faceProcessor.releasePortraitBitmap(displayedPortraitBitmap);
+        displayedPortraitBitmap = portraitBitmap;
+    }
+
     public void onLargestFaceProcessed(FaceProcessor.AnalyzeLargestFaceResult analyzeLargestFaceResult) {
         runOnUiThread(() -> {
             int errorCode = analyzeLargestFaceResult.getErrorCode();
             if (errorCode == 0) {
-                byte[] jpegPortraitImageBuffer = analyzeLargestFaceResult.getJpegPortraitImageBuffer();
+                Bitmap portraitBitmap = analyzeLargestFaceResult.getPortraitBitmap();
                 SpannableStringBuilder analysisAnalysisText = new SpannableStringBuilder();
                 boolean isIcaoCompliant = true;
 
-                /* Create a bitmap image for drawing using the portrait image JPEG buffer. */
-                Bitmap bitmap = BitmapFactory.decodeByteArray(
-                        jpegPortraitImageBuffer,
-                        0,
-                        jpegPortraitImageBuffer.length
-                );
-                portraitFaceView.setImageBitmap(bitmap);
+                /* Display the portrait image, rendered directly into a bitmap. */
+                showPortrait(portraitBitmap);
 
                 /* Check if pose is OK and print feedback. */
                 FacePose facePose = analyzeLargestFaceResult.getFacePose();
@@ -255,7 +272,7 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
             }
             if (isCapturing) {
                 /* Reset enrolment and match information */
-                portraitFaceView.setImageResource(R.drawable.empty_avatar);
+                showPortrait(null);
 
                 /* Reset the button text before stopping the capture. */
                 startCaptureButton.setText(getResources().getString(R.string.start_capture_button_label));
@@ -0,0 +1,81 @@
+package eu.id3.face.samples.analysisjava;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import eu.id3.face.DetectedFace;
+import eu.id3.face.Rectangle;
+
+/**
+ * Renders the portrait of a detected face into a bitmap which can be displayed directly.
+ *
+ * The portrait is cropped and resized to Parameters.thumbnailWidth x thumbnailHeight by the
+ * SDK, then its BGR pixels are copied into an ARGB bitmap. This avoids encoding the portrait
+ * as JPEG and decoding it again on the UI thread for every processed frame.
+ * The bitmaps and the pixel buffer are reused. A bitmap is only written again once the UI
+ * thread has given it back with release(), when it no longer displays it, so the bitmap on
+ * screen is never the one being written however late the UI thread runs. A new bitmap is
+ * created when none was given back yet, which in practice keeps two or three of them.
+ * render() must only be called from a single thread, release() from any thread.
+ */
+public class PortraitThumbnail {
+    private final ConcurrentLinkedQueue<Bitmap> freeBitmaps = new ConcurrentLinkedQueue<>();
+    private int[] argbPixels = new int[0];
+    private int bitmapCount = 0;
+
+    /**
+     * Returns the portrait of the face, mirrored horizontally if requested. The bitmap
+     * belongs to the caller until it is given back with release().
+     */
+    public Bitmap render(eu.id3.face.Image image, DetectedFace detectedFace, boolean mirror) {
+        int width = Parameters.thumbnailWidth;
+        int height = Parameters.thumbnailHeight;
+        try (Rectangle portraitBounds = detectedFace.getPortraitBounds(0.25f, 0.45f, 1.33f);
+             eu.id3.face.Image portraitImage = image.extractRoi(portraitBounds)) {
+            portraitImage.resize(width, height);
+            byte[] bgrPixels = portraitImage.getPixels();
+            int stride = portraitImage.getStride();
+
+            if (argbPixels.length != width * height) {
+                argbPixels = new int[width * height];
+            }
+            int index = 0;
+            for (int y = 0; y < height; y++) {
+                int rowOffset = y * stride;
+                for (int x = 0; x < width; x++) {
+                    int offset = rowOffset + 3 * (mirror ? width - 1 - x : x);
+                    argbPixels[index++] = 0xFF000000
+                            | (bgrPixels[offset + 2] & 0xFF) << 16
+                            | (bgrPixels[offset + 1] & 0xFF) << 8
+                            | (bgrPixels[offset] & 0xFF);
+                }
+            }
+        }
+
+        Bitmap bitmap = freeBitmaps.poll();
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmapCount++;
+        }
+        bitmap.setPixels(argbPixels, 0, width, 0, 0, width, height);
+        return bitmap;
+    }
+
+    /**
+     * Gives back a bitmap returned by render() which is no longer displayed, so that it can
+     * be written again. Null is ignored.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap != null) {
+            freeBitmaps.add(bitmap);
+        }
+    }
+
+    /**
+     * Number of bitmaps created since the start of the application.
+     */
+    public int getBitmapCount() {
+        return bitmapCount;
+    }
+}
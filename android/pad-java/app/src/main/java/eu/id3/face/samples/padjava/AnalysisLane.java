@@ -0,0 +1,185 @@
+package eu.id3.face.samples.padjava;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import eu.id3.face.DetectedFace;
+
+/**
+ * Runs the face analysis on its own thread, decoupled from the face detection.
+ *
+ * The detection runs on every frame and updates the bounds view right away. It then
+ * submits the image and the detected face to this lane, which analyzes them at the rate
+ * the analysis allows. Only the latest submission waits while another one is analyzed:
+ * a newer one replaces it, so the analysis always works on the most recent detection and
+ * never delays the detection of the next frame.
+ */
+public class AnalysisLane {
+    /**
+     * Analyzes a detected face on the analysis thread.
+     */
+    public interface Analyzer {
+        void analyze(eu.id3.face.Image image, DetectedFace detectedFace);
+
+        /**
+         * Called in order with the analyses when no face is detected anymore.
+         */
+        void reset();
+    }
+
+    private final Analyzer analyzer;
+    private final Object lock = new Object();
+    private HandlerThread analysisThread = null;
+    private Handler analysisHandler = null;
+    private eu.id3.face.Image waitingImage = null;
+    private DetectedFace waitingFace = null;
+    private boolean waitingReset = false;
+    private boolean isReset = true;
+    private boolean draining = false;
+    private volatile long analyzedCount = 0;
+    private volatile long skippedCount = 0;
+
+    public AnalysisLane(Analyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Starts the analysis thread.
+     */
+    public void start() {
+        synchronized (lock) {
+            analysisThread = new HandlerThread("Face Analysis");
+            analysisThread.start();
+            analysisHandler = new Handler(analysisThread.getLooper());
+            /* The analyzer may still hold the state of the last session. */
+            isReset = false;
+        }
+    }
+
+    /**
+     * Stops the analysis thread once the current analysis is done. The waiting
+     * submission is dropped.
+     */
+    public void stop() {
+        HandlerThread thread;
+        synchronized (lock) {
+            thread = analysisThread;
+            analysisThread = null;
+            analysisHandler = null;
+            clearWaiting();
+            waitingReset = false;
+        }
+        if (thread != null) {
+            thread.quitSafely();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Submits an image and the face detected in it for analysis. The lane takes ownership
+     * of both, detached from the FrameResources of the frame, and releases them once
+     * analyzed or replaced.
+     */
+    public void submit(eu.id3.face.Image image, DetectedFace detectedFace) {
+        synchronized (lock) {
+            if (analysisHandler == null) {
+                FrameResources.release(image);
+                FrameResources.release(detectedFace);
+                return;
+            }
+            if (waitingImage != null) {
+                skippedCount++;
+            }
+            clearWaiting();
+            waitingImage = image;
+            waitingFace = detectedFace;
+            isReset = false;
+            schedule();
+        }
+    }
+
+    /**
+     * Drops the waiting submission and resets the analyzer once the current analysis is
+     * done. Successive calls without submission in between reset the analyzer once.
+     */
+    public void reset() {
+        synchronized (lock) {
+            if (analysisHandler == null || isReset) {
+                return;
+            }
+            clearWaiting();
+            waitingReset = true;
+            isReset = true;
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!draining) {
+            draining = true;
+            analysisHandler.post(this::drain);
+        }
+    }
+
+    private void clearWaiting() {
+        if (waitingImage != null) {
+            FrameResources.release(waitingImage);
+            FrameResources.release(waitingFace);
+            waitingImage = null;
+            waitingFace = null;
+        }
+    }
+
+    /**
+     * Runs the waiting work until there is none left. A reset always precedes the
+     * submission which followed it.
+     */
+    private void drain() {
+        while (true) {
+            eu.id3.face.Image image;
+            DetectedFace detectedFace;
+            boolean resetRequested;
+            synchronized (lock) {
+                image = waitingImage;
+                detectedFace = waitingFace;
+                resetRequested = waitingReset;
+                waitingImage = null;
+                waitingFace = null;
+                waitingReset = false;
+                if (image == null && !resetRequested) {
+                    draining = false;
+                    return;
+                }
+            }
+            if (resetRequested) {
+                analyzer.reset();
+            }
+            if (image != null) {
+                long begin = FrameTrace.begin();
+                try {
+                    analyzer.analyze(image, detectedFace);
+                    analyzedCount++;
+                } finally {
+                    FrameResources.release(image);
+                    FrameResources.release(detectedFace);
+                    FrameTrace.end("analysis", begin);
+                }
+            }
+        }
+    }
+
+    public long getAnalyzedCount() {
+        return analyzedCount;
+    }
+
+    /**
+     * Number of detections replaced by a more recent one before being analyzed.
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+}
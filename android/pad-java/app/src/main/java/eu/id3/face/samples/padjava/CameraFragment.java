@@ -7,7 +7,6 @@ import android.content.res.Configuration;
 import android.graphics.Color;
 import android.graphics.ImageFormat;
 import android.graphics.Paint;
-import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -36,6 +35,8 @@ import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -93,9 +94,27 @@ public class CameraFragment extends Fragment {
     private boolean isCapturing = false;
     private boolean needsToProcess = false;
     private FaceProcessor faceProcessor = null;
+    private final FrameIngest frameIngest = new FrameIngest();
+    private final FrameScheduler frameScheduler = new FrameScheduler(this::processFrame);
+    /* The analysis runs on its own thread so that it never delays the detection. */
+    private final AnalysisLane analysisLane = new AnalysisLane(new AnalysisLane.Analyzer() {
+        @Override
+        public void analyze(eu.id3.face.Image image, DetectedFace detectedFace) {
+            FaceProcessor.AnalyzeLargestFaceResult analyzeLargestFaceResult =
+                    faceProcessor.analyzeLargestFace(image, detectedFace);
+            faceProcessorListener.onLargestFaceProcessed(analyzeLargestFaceResult);
+        }
+
+        @Override
+        public void reset() {
+            faceProcessor.resetPortrait();
+            faceProcessorListener.onResetFaceProcessed();
+        }
+    });
     private FaceProcessorListener faceProcessorListener = null;
     /**
-     * Processes the image once it is available from the camera reader.
+     * Hands the image to the frame scheduler once it is available from the camera reader.
+     * An image arriving while another one waits for processing replaces it.
      */
     private final ImageReader.OnImageAvailableListener onImageAvailableListener
             = new ImageReader.OnImageAvailableListener() {
@@ -107,90 +126,83 @@ public class CameraFragment extends Fragment {
             if (image == null)
                 return;
 
-            if (isCapturing) {
-                /* Convert the image from input format to BGR for id3 Face SDK processing functions. */
-                /* Get the YUV planes of the image. */
-                android.media.Image.Plane[] planes = image.getPlanes();
-                int w = image.getWidth();
-                int h = image.getHeight();
-                int uvPixelStride = planes[1].getPixelStride();
-                int uvRowStride = planes[1].getRowStride();
-                byte[] plane0 = new byte[planes[0].getBuffer().remaining()];
-                planes[0].getBuffer().get(plane0);
-                byte[] plane1 = new byte[planes[1].getBuffer().remaining()];
-                planes[1].getBuffer().get(plane1);
-                byte[] plane2 = new byte[planes[2].getBuffer().remaining()];
-                planes[2].getBuffer().get(plane2);
-
-                /* Convert this image to an id3.face Image. */
-                eu.id3.face.Image processingImage = eu.id3.face.Image.fromYuvPlanes(
-                        plane0,
-                        plane1,
-                        plane2,
-                        w,
-                        h,
-                        uvPixelStride,
-                        uvRowStride,
-                        PixelFormat.BGR_24_BITS
-                );
+            frameScheduler.submit(image);
+        }
+    };
 
-                /* Rotate image if necessary. */
-                int rotationDegrees = displayOrientation - sensorOrientation;
-                if (rotationDegrees < 0) {
-                    rotationDegrees += 360;
-                }
-                processingImage.rotate(rotationDegrees);
+    /**
+     * Processes the freshest camera image on the frame processing thread.
+     * The image is closed by the frame scheduler, as well as the SDK objects registered in
+     * frameResources.
+     */
+    private void processFrame(Image image, FrameResources frameResources) {
+        /* The preview runs while the models are loading, frames are processed once they are ready. */
+        if (isCapturing && faceProcessor.isReady()) {
+            /*
+             * Convert the image from input format to BGR for id3 Face SDK processing functions.
+             * The YUV planes are copied into buffers reused from one frame to the next.
+             */
+            eu.id3.face.Image processingImage = frameResources.track(
+                    frameIngest.toImage(image, PixelFormat.BGR_24_BITS));
+
+            /* Rotate image if necessary. */
+            int rotationDegrees = displayOrientation - sensorOrientation;
+            if (rotationDegrees < 0) {
+                rotationDegrees += 360;
+            }
+            long begin = FrameTrace.begin();
+            processingImage.rotate(rotationDegrees);
+            FrameTrace.end("rotate", begin);
+
+            /*
+             * Resize image if larger or higher than 'maxProcessingImageSize'.
+             * This operation allows to speed up the face detection process.
+             * The detection image is rotated and resized while it is read from the camera
+             * image, instead of converting, rotating and downscaling a copy of the full
+             * resolution image.
+             */
+            eu.id3.face.Image downscaledImage = frameResources.track(frameIngest.toProcessingImage(
+                    image, rotationDegrees, Parameters.maxProcessingImageSize));
+            float downscaleRatio = frameIngest.getDownscaleRatio();
+
+            /* Track faces. */
+            DetectedFace detectedFace = frameResources.track(
+                    faceProcessor.detectLargestFace(downscaledImage));
+            if (detectedFace != null) {
+                /*
+                 * For PAD operations it is better to work on the original image so we rescale the detectedFace.
+                 */
+                detectedFace.rescale(1 / downscaleRatio);
+                eu.id3.face.Rectangle bounds = frameResources.track(detectedFace.getBounds());
+                /* Update the bounds view. */
+                boundsView.update(
+                        bounds.getTopLeft().x,
+                        bounds.getTopLeft().y,
+                        bounds.getBottomRight().x,
+                        bounds.getBottomRight().y,
+                        processingImage.getWidth(), processingImage.getHeight()
+                );
 
                 /*
-                 * Resize image if larger or higher than 'maxProcessingImageSize'.
-                 * This operation allows to speed up the face detection process.
+                 * Process frame if requested by UI.
                  */
-                eu.id3.face.Image downscaledImage = processingImage.clone();
-                float downscaleRatio = downscaledImage.downscale(Parameters.maxProcessingImageSize);
-
-                /* Track faces. */
-                DetectedFace detectedFace = faceProcessor.detectLargestFace(downscaledImage);
-                if (detectedFace != null) {
-                    /*
-                     * For PAD operations it is better to work on the original image so we rescale the detectedFace.
-                     */
-                    detectedFace.rescale(1 / downscaleRatio);
-                    eu.id3.face.Rectangle bounds = detectedFace.getBounds();
-                    /*
-                     * Convert id3.face Rectangle object to android.graphics Rect object and update
-                     * bounds view.
-                     */
-                    Rect rect = new Rect(
-                            bounds.getTopLeft().x,
-                            bounds.getTopLeft().y,
-                            bounds.getBottomRight().x,
-                            bounds.getBottomRight().y
-                    );
-                    boundsView.update(rect, processingImage.getWidth(), processingImage.getHeight());
-
-                    /*
-                     * Process frame if requested by UI.
-                     */
-                    needsToProcess = true;
-                    if (needsToProcess) {
-                        FaceProcessor.AnalyzeLargestFaceResult analyzeLargestFaceResult =
-                                faceProcessor.analyzeLargestFace(processingImage, detectedFace);
-                        faceProcessorListener.onLargestFaceProcessed(analyzeLargestFaceResult);
-                        needsToProcess = false;
-                    }
-                } else {
-                    faceProcessor.resetPortrait();
-                    faceProcessorListener.onResetFaceProcessed();
-                    boundsView.update(null, 0, 0);
+                needsToProcess = true;
+                if (needsToProcess) {
+                    /* The analysis lane closes the image and the face once analyzed. */
+                    analysisLane.submit(frameResources.detach(processingImage),
+                            frameResources.detach(detectedFace));
+                    needsToProcess = false;
                 }
             } else {
-                faceProcessor.resetPortrait();
-                faceProcessorListener.onResetFaceProcessed();
-                boundsView.update(null, 0, 0);
+                analysisLane.reset();
+                boundsView.clear();
             }
-            image.close();
+        } else {
+            analysisLane.reset();
+            boundsView.clear();
         }
-    };
+    }
+
     private final TextureView.SurfaceTextureListener mSurfaceTextureListener
             = new TextureView.SurfaceTextureListener() {
 
@@ -290,7 +302,7 @@ public class CameraFragment extends Fragment {
      * from occurring in the 'onImageAvailableListener'.
      */
     void stopCapture() {
-        boundsView.update(null, 0, 0);
+        boundsView.clear();
         isCapturing = false;
     }
 
@@ -325,6 +337,8 @@ public class CameraFragment extends Fragment {
         super.onResume();
         Log.v(LOG_TAG, "onResume");
         startBackgroundThread();
+        analysisLane.start();
+        frameScheduler.start();
         if (cameraPreview.isAvailable()) {
             openCamera(cameraPreview.getWidth(), cameraPreview.getHeight());
         } else {
@@ -338,11 +352,36 @@ public class CameraFragment extends Fragment {
     @Override
     public void onPause() {
         Log.v(LOG_TAG, "onPause");
+        /* Finish the frame being processed before closing the image reader. */
+        frameScheduler.stop();
+        analysisLane.stop();
         closeCamera();
         stopBackgroundThread();
+        if (Parameters.frameTraceEnabled) {
+            writeFrameTrace();
+        }
         super.onPause();
     }
 
+    /**
+     * Saves the timing of the last processing stages, see FrameTrace. The trace can be
+     * retrieved with 'adb pull /sdcard/Android/data/<package>/files/frame_trace.json'.
+     */
+    private void writeFrameTrace() {
+        File directory = requireContext().getExternalFilesDir(null);
+        if (directory == null) {
+            directory = requireContext().getFilesDir();
+        }
+        File file = new File(directory, "frame_trace.json");
+        new Thread(() -> {
+            try {
+                FrameTrace.writeChromeTrace(file);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while writing the frame trace: " + e.getMessage());
+            }
+        }, "Frame Trace").start();
+    }
+
     /**
      * Creates the camera preview.
      */
@@ -473,10 +512,17 @@ public class CameraFragment extends Fragment {
 
             imageDimension = previewSize;
 
-            /* Create the image reader object that will analyze the camera output. */
+            /*
+             * Create the image reader object that will analyze the camera output. Its size is
+             * chosen for the processing, independently of the preview size.
+             */
+            Size processingSize = chooseProcessingSize(
+                    map.getOutputSizes(ImageFormat.YUV_420_888), previewSize
+            );
+            Log.v(LOG_TAG, "Preview size: " + previewSize + ", processing size: " + processingSize);
             imageReader = ImageReader.newInstance(
-                    previewSize.getWidth(), previewSize.getHeight(),
-                    ImageFormat.YUV_420_888, 10
+                    processingSize.getWidth(), processingSize.getHeight(),
+                    ImageFormat.YUV_420_888, FrameScheduler.MAX_IMAGES
             );
             imageReader.setOnImageAvailableListener(onImageAvailableListener, backgroundHandler);
 
@@ -573,6 +619,66 @@ public class CameraFragment extends Fragment {
         }
     }
 
+    /**
+     * Chooses the size of the camera stream analyzed by the face processor.
+     *
+     * The faces are detected on a copy of the frame downscaled to 'maxProcessingImageSize',
+     * but the PAD analysis runs on the full resolution frame. The smallest size with the
+     * aspect ratio of the preview whose largest side reaches 'maxProcessingImageSize' is
+     * chosen, raised only as far as needed for a face whose eyes are
+     * 'minInterOcularDistanceRatio' of the shortest side of the frame apart to keep
+     * 'minInterOcularDistance' pixels between the eyes in the analyzed frame. When no size
+     * is large enough, the size giving the most pixels is chosen and a warning is logged.
+     */
+    public Size chooseProcessingSize(Size[] choices, Size previewSize) {
+        /* Largest side of the image on which the inter-ocular distance is measured. */
+        final int analyzedMaxSize = Integer.MAX_VALUE;
+        float minShortSide = Parameters.minInterOcularDistance / Parameters.minInterOcularDistanceRatio;
+        int w = previewSize.getWidth();
+        int h = previewSize.getHeight();
+        long previewArea = (long) w * h;
+        List<Size> candidates = new ArrayList<>();
+        for (Size option : choices) {
+            if (option.getHeight() == option.getWidth() * h / w
+                    && Math.max(option.getWidth(), option.getHeight()) >= Parameters.maxProcessingImageSize
+                    && (long) option.getWidth() * option.getHeight() <= previewArea) {
+                candidates.add(option);
+            }
+        }
+        if (candidates.isEmpty()) {
+            Log.w(LOG_TAG, "No processing size reaches " + Parameters.maxProcessingImageSize
+                    + " pixels, using the preview size");
+            return previewSize;
+        }
+
+        Comparator<Size> byArea = new CompareSizesByArea();
+        Size best = null;
+        for (Size option : candidates) {
+            if (getAnalyzedShortSide(option, analyzedMaxSize) >= minShortSide
+                    && (best == null || byArea.compare(option, best) < 0)) {
+                best = option;
+            }
+        }
+        if (best == null) {
+            /* The candidates share the same aspect ratio: the largest one gives the most pixels. */
+            best = Collections.max(candidates, byArea);
+            Log.w(LOG_TAG, "A face at " + Parameters.minInterOcularDistanceRatio + " of the frame only has "
+                    + (int) (getAnalyzedShortSide(best, analyzedMaxSize) * Parameters.minInterOcularDistanceRatio)
+                    + " pixels between the eyes, " + Parameters.minInterOcularDistance + " are expected");
+        }
+        return best;
+    }
+
+    /**
+     * Shortest side of a frame of the given size once downscaled so that its largest side
+     * does not exceed analyzedMaxSize.
+     */
+    private static float getAnalyzedShortSide(Size size, int analyzedMaxSize) {
+        int longSide = Math.max(size.getWidth(), size.getHeight());
+        int shortSide = Math.min(size.getWidth(), size.getHeight());
+        return shortSide * Math.min(1.0f, (float) analyzedMaxSize / longSide);
+    }
+
     /**
      * Internal class that implements a comparator for Size objects, by comparing their area.
      */
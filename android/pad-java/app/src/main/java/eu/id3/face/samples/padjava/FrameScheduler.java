@@ -0,0 +1,245 @@
+package eu.id3.face.samples.padjava;
+
+import android.media.Image;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Hands camera frames to a processing thread at the pace the processing can sustain.
+ *
+ * At most one frame waits while another one is processed. A frame submitted while one
+ * is already waiting replaces it, so the processing always starts on the freshest frame
+ * and the latency never exceeds about two processing times, whatever the camera rate.
+ * Replaced frames are closed and counted as dropped.
+ *
+ * The processing time, the interval between camera frames and the interval between
+ * processed frames are tracked with exponential moving averages. A frame arriving while
+ * the current one is expected to take longer than the camera interval to finish is
+ * dropped right away: a fresher frame will arrive before the processing can start on it,
+ * so it would only hold an ImageReader buffer until being replaced.
+ */
+public class FrameScheduler {
+    private final static String LOG_TAG = "FrameScheduler";
+
+    /**
+     * Number of images the ImageReader needs: one processed, one waiting and two for
+     * acquireLatestImage() to skip to the most recent image.
+     */
+    public final static int MAX_IMAGES = 4;
+
+    /* Weight of the last measure in the moving averages. */
+    private final static double SMOOTHING = 0.1;
+    private final static long LOG_PERIOD_NANOS = 5_000_000_000L;
+
+    /**
+     * Processes a frame on the processing thread. The frame is closed by the scheduler, as
+     * well as the SDK objects registered in frameResources.
+     */
+    public interface FrameConsumer {
+        void processFrame(Image image, FrameResources frameResources);
+    }
+
+    private final FrameConsumer consumer;
+    private final FrameResources frameResources = new FrameResources();
+    private final Object lock = new Object();
+    private HandlerThread processingThread = null;
+    private Handler processingHandler = null;
+    private Image waitingFrame = null;
+    private boolean draining = false;
+    private long currentFrameBeginNanos = 0;
+    private long lastArrivalNanos = 0;
+
+    private volatile double averageProcessingMs = 0;
+    private volatile double averageIntervalMs = 0;
+    private volatile double averageArrivalMs = 0;
+    private volatile long processedFrameCount = 0;
+    private volatile long droppedFrameCount = 0;
+    private long lastFrameEndNanos = 0;
+    private long lastLogNanos = 0;
+
+    public FrameScheduler(FrameConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Starts the processing thread.
+     */
+    public void start() {
+        synchronized (lock) {
+            processingThread = new HandlerThread("Frame Processing");
+            processingThread.start();
+            processingHandler = new Handler(processingThread.getLooper());
+            lastFrameEndNanos = 0;
+            lastArrivalNanos = 0;
+            averageArrivalMs = 0;
+        }
+    }
+
+    /**
+     * Stops the processing thread once the frame being processed is done. The waiting
+     * frame is dropped. Frames submitted afterwards are closed right away.
+     */
+    public void stop() {
+        HandlerThread thread;
+        synchronized (lock) {
+            thread = processingThread;
+            processingThread = null;
+            processingHandler = null;
+            if (waitingFrame != null) {
+                waitingFrame.close();
+                waitingFrame = null;
+            }
+        }
+        if (thread != null) {
+            thread.quitSafely();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Submits a frame acquired from the ImageReader. The scheduler takes ownership of it.
+     */
+    public void submit(Image image) {
+        synchronized (lock) {
+            if (processingHandler == null) {
+                image.close();
+                return;
+            }
+            long nowNanos = System.nanoTime();
+            updateArrival(nowNanos);
+            if (waitingFrame == null && isBusyUntilNextArrival(nowNanos)) {
+                image.close();
+                droppedFrameCount++;
+                return;
+            }
+            if (waitingFrame != null) {
+                waitingFrame.close();
+                droppedFrameCount++;
+            }
+            waitingFrame = image;
+            if (draining) {
+                return;
+            }
+            draining = true;
+            processingHandler.post(this::drain);
+        }
+    }
+
+    private void updateArrival(long nowNanos) {
+        if (lastArrivalNanos != 0) {
+            double arrivalMs = (nowNanos - lastArrivalNanos) / 1e6;
+            averageArrivalMs = averageArrivalMs == 0 ? arrivalMs
+                    : averageArrivalMs + SMOOTHING * (arrivalMs - averageArrivalMs);
+        }
+        lastArrivalNanos = nowNanos;
+    }
+
+    /**
+     * Returns true if the frame being processed is expected to end after the arrival of
+     * the next camera frame, according to the average processing time.
+     */
+    private boolean isBusyUntilNextArrival(long nowNanos) {
+        if (currentFrameBeginNanos == 0 || processedFrameCount == 0 || averageArrivalMs == 0) {
+            return false;
+        }
+        double remainingMs = averageProcessingMs - (nowNanos - currentFrameBeginNanos) / 1e6;
+        return remainingMs > averageArrivalMs;
+    }
+
+    /**
+     * Processes the waiting frames until there is none left.
+     */
+    private void drain() {
+        while (true) {
+            Image frame;
+            long beginNanos;
+            synchronized (lock) {
+                frame = waitingFrame;
+                waitingFrame = null;
+                currentFrameBeginNanos = 0;
+                if (frame == null || processingHandler == null) {
+                    draining = false;
+                    if (frame != null) {
+                        frame.close();
+                    }
+                    return;
+                }
+                beginNanos = System.nanoTime();
+                currentFrameBeginNanos = beginNanos;
+            }
+            FrameTrace.beginFrame();
+            try {
+                consumer.processFrame(frame, frameResources);
+            } finally {
+                frameResources.close();
+                frame.close();
+                FrameTrace.end("frame", beginNanos);
+            }
+            updateStatistics(beginNanos, System.nanoTime());
+        }
+    }
+
+    private void updateStatistics(long beginNanos, long endNanos) {
+        double processingMs = (endNanos - beginNanos) / 1e6;
+        averageProcessingMs = processedFrameCount == 0 ? processingMs
+                : averageProcessingMs + SMOOTHING * (processingMs - averageProcessingMs);
+        if (lastFrameEndNanos != 0) {
+            double intervalMs = (endNanos - lastFrameEndNanos) / 1e6;
+            averageIntervalMs = averageIntervalMs == 0 ? intervalMs
+                    : averageIntervalMs + SMOOTHING * (intervalMs - averageIntervalMs);
+        }
+        lastFrameEndNanos = endNanos;
+        processedFrameCount++;
+
+        if (endNanos - lastLogNanos > LOG_PERIOD_NANOS) {
+            lastLogNanos = endNanos;
+            Log.v(LOG_TAG, String.format(Locale.ROOT,
+                    "%.1f fps, %.1f ms per frame, %d processed, %d dropped, "
+                            + "%d live SDK objects, %d KB peak",
+                    getProcessingFps(), averageProcessingMs, processedFrameCount,
+                    droppedFrameCount, FrameResources.getLiveObjectCount(),
+                    FrameResources.getPeakNativeBytes() / 1024));
+        }
+    }
+
+    /**
+     * Effective processing rate, in frames per second.
+     */
+    public double getProcessingFps() {
+        double intervalMs = averageIntervalMs;
+        return intervalMs == 0 ? 0 : 1000.0 / intervalMs;
+    }
+
+    /**
+     * Moving average of the processing time of a frame, in milliseconds.
+     */
+    public double getAverageProcessingMs() {
+        return averageProcessingMs;
+    }
+
+    public long getProcessedFrameCount() {
+        return processedFrameCount;
+    }
+
+    /**
+     * Moving average of the interval between camera frames, in milliseconds.
+     */
+    public double getAverageArrivalMs() {
+        return averageArrivalMs;
+    }
+
+    /**
+     * Number of frames dropped without being processed: replaced by a fresher one, or
+     * arrived while the processing was not expected to end before the next frame.
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+}
@@ -0,0 +1,60 @@
+package eu.id3.face.samples.padjava;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads model files from the Assets with a single copy.
+ *
+ * Models are stored uncompressed in the APK (see noCompress in build.gradle), so they
+ * can be memory-mapped straight from the APK file and copied once into the buffer given
+ * to FaceLibrary.loadModelBuffer. Compressed assets cannot be mapped; they are then
+ * streamed into a buffer presized with the asset length.
+ */
+public class ModelAssetLoader {
+    private ModelAssetLoader() {
+    }
+
+    public static byte[] load(AssetManager assetManager, String assetPath) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assetManager.openFd(assetPath);
+        } catch (FileNotFoundException e) {
+            /* openFd() fails on compressed assets. */
+            return read(assetManager, assetPath);
+        }
+        try (AssetFileDescriptor fd = descriptor;
+             FileInputStream in = fd.createInputStream();
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer mapped = channel.map(
+                    FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength());
+            byte[] buffer = new byte[mapped.remaining()];
+            mapped.get(buffer);
+            return buffer;
+        }
+    }
+
+    private static byte[] read(AssetManager assetManager, String assetPath) throws IOException {
+        try (InputStream in = assetManager.open(assetPath)) {
+            /* For assets, available() returns the number of bytes left in the file. */
+            byte[] buffer = new byte[in.available()];
+            int offset = 0;
+            while (offset < buffer.length) {
+                int read = in.read(buffer, offset, buffer.length - offset);
+                if (read == -1) {
+                    throw new EOFException("Truncated asset " + assetPath);
+                }
+                offset += read;
+            }
+            return buffer;
+        }
+    }
+}
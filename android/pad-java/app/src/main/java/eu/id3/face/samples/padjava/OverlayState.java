@@ -0,0 +1,92 @@
+package eu.id3.face.samples.padjava;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the face bounds to draw from the processing thread to the UI thread without locking,
+ * blocking or allocating.
+ *
+ * Three snapshots are used in turn. The processing thread fills the back snapshot and
+ * publishes it by exchanging it with the ready one. The UI thread exchanges its front
+ * snapshot with the ready one when a newer snapshot was published. Each thread therefore
+ * owns one snapshot at all times: a snapshot is never written while it is drawn, and a
+ * publication never waits for the drawing to end.
+ * Publications from several threads, e.g. the processing thread and the UI clearing the
+ * overlay, must synchronize on this object; the drawing never does.
+ */
+public class OverlayState {
+    /**
+     * Bounds in view coordinates, with the id of each face.
+     */
+    public static class Snapshot {
+        public final int[] lefts;
+        public final int[] tops;
+        public final int[] rights;
+        public final int[] bottoms;
+        public final int[] ids;
+        public int count = 0;
+        private long sequence = 0;
+
+        Snapshot(int capacity) {
+            lefts = new int[capacity];
+            tops = new int[capacity];
+            rights = new int[capacity];
+            bottoms = new int[capacity];
+            ids = new int[capacity];
+        }
+
+        /**
+         * Adds the bounds of a face, returns false if the snapshot is full.
+         */
+        public boolean add(int left, int top, int right, int bottom, int id) {
+            if (count == ids.length) {
+                return false;
+            }
+            lefts[count] = Math.min(left, right);
+            tops[count] = Math.min(top, bottom);
+            rights[count] = Math.max(left, right);
+            bottoms[count] = Math.max(top, bottom);
+            ids[count] = id;
+            count++;
+            return true;
+        }
+    }
+
+    private final AtomicReference<Snapshot> ready;
+    private Snapshot back;
+    private Snapshot front;
+    private long sequence = 0;
+
+    public OverlayState(int capacity) {
+        ready = new AtomicReference<>(new Snapshot(capacity));
+        back = new Snapshot(capacity);
+        front = new Snapshot(capacity);
+    }
+
+    /**
+     * Returns the empty back snapshot to fill.
+     */
+    public Snapshot edit() {
+        back.count = 0;
+        return back;
+    }
+
+    /**
+     * Publishes the back snapshot returned by edit().
+     */
+    public void publish() {
+        back.sequence = ++sequence;
+        back = ready.getAndSet(back);
+    }
+
+    /**
+     * Returns the latest published snapshot. UI thread only. The snapshot must not be kept
+     * after the drawing.
+     */
+    public Snapshot acquire() {
+        if (ready.get().sequence > front.sequence) {
+            front = ready.getAndSet(front);
+        }
+        return front;
+    }
+}
@@ -9,5 +9,18 @@ public class Parameters {
     public final static int colorScoreThreshold = 90;
     public final static int colorScoreConfidenceThreshold = 70;
     public final static int maxProcessingImageSize = 512;
+    public final static int minInterOcularDistance = 90;
+    public final static float minInterOcularDistanceRatio = 0.08f;
+    public final static boolean roiDetection = true;
+    public final static int roiFullScanPeriod = 10;
+    public final static float roiMarginRatio = 0.5f;
+    public final static int roiDetectionScoreThreshold = 80;
     public final static int cameraType = CameraCharacteristics.LENS_FACING_FRONT;
+    public final static int modelLoadingThreadCount = 3;
+    public final static boolean preloadFeatureModels = true;
+    public final static long modelMemoryBudget = 100L * 1024 * 1024;
+    public final static boolean frameTraceEnabled = false;
+    public final static int frameTraceCapacity = 4096;
+    public final static int thumbnailWidth = 240;
+    public final static int thumbnailHeight = 320;
 }
@@ -5,19 +5,14 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
-import android.graphics.Rect;
 import android.hardware.camera2.CameraCharacteristics;
 import android.util.AttributeSet;
 import android.view.View;
 
 public class BoundsView extends View {
-    private boolean isCapturing = false;
-    private boolean isDrawing = false;
-    private Rect bounds = null;
+    private final OverlayState overlayState = new OverlayState(1);
     private Paint boundsPaint = null;
 
-    private int processingWidth = 0;
-    private int processingHeight = 0;
     private int ratioWidth = 0;
     private int ratioHeight = 0;
 
@@ -35,37 +30,49 @@ public class BoundsView extends View {
 
     /**
      * This function is called every time the bounds to draw are modified.
-     * If the capture is ongoing and an object of interest is detected, we draw the detected bounds
-     * in the view. Otherwise, we erase the previous bounds.
+     * If an object of interest is detected, we draw the last published bounds in the view.
+     * Otherwise, we erase the previous bounds.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (isCapturing) {
-            scaleRect(bounds);
-            canvas.drawRect(bounds, boundsPaint);
+        OverlayState.Snapshot snapshot = overlayState.acquire();
+        if (snapshot.count > 0) {
+            canvas.drawRect(snapshot.lefts[0], snapshot.tops[0], snapshot.rights[0],
+                    snapshot.bottoms[0], boundsPaint);
         } else {
             canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
         }
-        isDrawing = false;
     }
 
     /**
-     * Updates the bounds this view needs.
+     * Updates the bounds this view needs, given in the coordinates of the processing image.
      */
-    public void update(Rect bounds, int processingWidth, int processingHeight) {
-        if (!isDrawing) {
-            if (bounds == null) {
-                isCapturing = false;
-            } else {
-                isCapturing = true;
-                this.processingWidth = processingWidth;
-                this.processingHeight = processingHeight;
-            }
-            this.bounds = bounds;
-            isDrawing = true;
-            postInvalidate();
+    public void update(int left, int top, int right, int bottom,
+                       int processingWidth, int processingHeight) {
+        int viewWidth = getMeasuredWidth();
+        int viewHeight = getMeasuredHeight();
+        synchronized (overlayState) {
+            overlayState.edit().add(
+                    scaleX(left, viewWidth, processingWidth),
+                    scaleY(top, viewHeight, processingHeight),
+                    scaleX(right, viewWidth, processingWidth),
+                    scaleY(bottom, viewHeight, processingHeight),
+                    0);
+            overlayState.publish();
         }
+        postInvalidate();
+    }
+
+    /**
+     * Erases the bounds.
+     */
+    public void clear() {
+        synchronized (overlayState) {
+            overlayState.edit();
+            overlayState.publish();
+        }
+        postInvalidate();
     }
 
     /**
@@ -104,15 +111,15 @@ public class BoundsView extends View {
      * The camera in "selfie" mode acts like a mirror in the preview, but the real output
      * is flipped compared to this preview so we need to mirror coordinates.
      */
-    private void scaleRect(Rect rect) {
-        if (eu.id3.face.samples.portraitprocessorjava.Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT) {
-            rect.left = this.getMeasuredWidth() - rect.left * this.getMeasuredWidth() / processingWidth;
-            rect.right = this.getMeasuredWidth() - rect.right * this.getMeasuredWidth() / processingWidth;
+    private static int scaleX(int x, int viewWidth, int processingWidth) {
+        if (Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT) {
+            return viewWidth - x * viewWidth / processingWidth;
         } else {
-            rect.left = rect.left * this.getMeasuredWidth() / processingWidth;
-            rect.right = rect.right * this.getMeasuredWidth() / processingWidth;
+            return x * viewWidth / processingWidth;
         }
-        rect.top = rect.top * this.getMeasuredHeight() / processingHeight;
-        rect.bottom = rect.bottom * this.getMeasuredHeight() / processingHeight;
+    }
+
+    private static int scaleY(int y, int viewHeight, int processingHeight) {
+        return y * viewHeight / processingHeight;
     }
 }
@@ -1,147 +1,302 @@
 package eu.id3.face.samples.portraitprocessorjava;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.hardware.camera2.CameraCharacteristics;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import eu.id3.face.DetectedFace;
 import eu.id3.face.DetectedFaceList;
 import eu.id3.face.EyeGaze;
 import eu.id3.face.FaceDetector;
 import eu.id3.face.FaceException;
-import eu.id3.face.FaceLibrary;
 import eu.id3.face.FaceModel;
 import eu.id3.face.GeometricAttributes;
-import eu.id3.face.Image;
-import eu.id3.face.ImageFormat;
+import eu.id3.face.PixelFormat;
 import eu.id3.face.PointList;
 import eu.id3.face.Portrait;
 import eu.id3.face.PortraitProcessor;
 import eu.id3.face.PortraitQualityCheckpoints;
-import eu.id3.face.ProcessingUnit;
-import eu.id3.face.Rectangle;
 
 public class FaceProcessor {
+    private final static String LOG_TAG = "FaceProcessor";
+
+    private ModelRegistry modelRegistry = null;
+    private ModelRegistry.Handle detectorModel = null;
+    private final List<ModelRegistry.Handle> portraitModels = new ArrayList<>();
+
     private FaceDetector faceDetector = null;
+    private final PortraitThumbnail portraitThumbnail = new PortraitThumbnail();
+    private TemporalFaceDetector temporalFaceDetector = null;
 
     PortraitProcessor processor = new PortraitProcessor();
     private Portrait portrait;
     boolean portraitCreated = false;
 
+    private final ExecutorService warmUpExecutor =
+            Executors.newFixedThreadPool(Parameters.modelLoadingThreadCount);
+    private Future<Void> readyFuture = null;
+    private Future<Void> featureWarmUpFuture = null;
+    private Future<List<ModelRegistry.Handle>> preloadedModels = null;
+
     public FaceProcessor(Context context) {
-        String LOG_TAG = "FaceProcessor";
-        try {
-            /*
-             * Load a face detector.
-             * First load the models from the Assets and then initialize the FaceDetector object.
-             * Only one FaceDetector object is needed to perform all of your detection operation.
-             */
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_detector_v4b.id3nn")),
-                    FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU
-            );
-            faceDetector = new FaceDetector();
-            faceDetector.setConfidenceThreshold(Parameters.detectorConfidenceThreshold);
-            faceDetector.setModel(FaceModel.FACE_DETECTOR_4B);
-            faceDetector.setThreadCount(Parameters.detectorThreadCount);
+        /*
+         * Declare the models used by this processor.
+         * Nothing is loaded until a model is acquired.
+         */
+        modelRegistry = new ModelRegistry(context, Parameters.modelMemoryBudget)
+                .register(FaceModel.FACE_DETECTOR_4B, "models/face_detector_v4b.id3nn")
+                .register(FaceModel.FACE_POSE_ESTIMATOR_1A, "models/face_pose_estimator_v1a.id3nn")
+                .register(FaceModel.FACE_OCCLUSION_DETECTOR_2A, "models/face_occlusion_detector_v2a.id3nn")
+                .register(FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A, "models/face_attributes_classifier_v2a.id3nn")
+                .register(FaceModel.FACE_ENCODER_10B, "models/face_encoder_v10b.id3nn")
+                .register(FaceModel.FACE_LANDMARKS_ESTIMATOR_2A, "models/face_landmarks_estimator_v2a.id3nn")
+                .register(FaceModel.FACE_AGE_ESTIMATOR_1A, "models/face_age_estimator_v1a.id3nn")
+                .register(FaceModel.FACE_EXPRESSION_CLASSIFIER_1A, "models/face_expression_classifier_v1a.id3nn");
+
+        /*
+         * Load the models in the background so that the camera preview starts right away.
+         * The detection model is needed for every frame. The other face analysis models
+         * are loaded in parallel if requested, otherwise on their first use.
+         */
+        Future<List<ModelRegistry.Handle>> detectionModels =
+                modelRegistry.preload(warmUpExecutor, FaceModel.FACE_DETECTOR_4B);
+        if (Parameters.preloadFeatureModels) {
+            preloadedModels = modelRegistry.preload(warmUpExecutor,
+                    FaceModel.FACE_POSE_ESTIMATOR_1A,
+                    FaceModel.FACE_OCCLUSION_DETECTOR_2A,
+                    FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A,
+                    FaceModel.FACE_ENCODER_10B,
+                    FaceModel.FACE_LANDMARKS_ESTIMATOR_2A,
+                    FaceModel.FACE_AGE_ESTIMATOR_1A,
+                    FaceModel.FACE_EXPRESSION_CLASSIFIER_1A);
+        }
+        readyFuture = warmUpExecutor.submit(() -> {
+            try {
+                /*
+                 * Load a face detector.
+                 * Only one FaceDetector object is needed to perform all of your detection operation.
+                 */
+                detectorModel = detectionModels.get().get(0);
+                faceDetector = new FaceDetector();
+                faceDetector.setConfidenceThreshold(Parameters.detectorConfidenceThreshold);
+                faceDetector.setModel(FaceModel.FACE_DETECTOR_4B);
+                faceDetector.setThreadCount(Parameters.detectorThreadCount);
+                temporalFaceDetector = new TemporalFaceDetector(faceDetector);
+
+                /* Run a first detection to prime the native kernels. */
+                try (eu.id3.face.Image warmUpImage = createWarmUpImage()) {
+                    faceDetector.detectFaces(warmUpImage).close();
+                }
+
+                Log.v(LOG_TAG, "Load models: OK !");
+                return null;
+            } catch (Exception e) {
+                e.printStackTrace();
+                Log.e(LOG_TAG, "Error while loading models: " + e.getMessage());
+                throw e;
+            }
+        });
 
+        if (Parameters.preloadFeatureModels) {
             /*
-             * Load other face analysis models.
+             * Prime the portrait processor with the same grey image once the detection is
+             * ready, so that the first analysis does not pay for its first run either.
              */
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_pose_estimator_v1a.id3nn")),
-                    FaceModel.FACE_POSE_ESTIMATOR_1A, ProcessingUnit.CPU
-            );
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_occlusion_detector_v2a.id3nn")),
-                    FaceModel.FACE_OCCLUSION_DETECTOR_2A, ProcessingUnit.CPU
-            );
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_attributes_classifier_v2a.id3nn")),
-                    FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A, ProcessingUnit.CPU
-            );
-
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_encoder_v10b.id3nn")),
-                    FaceModel.FACE_ENCODER_10B, ProcessingUnit.CPU
-            );
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_landmarks_estimator_v2a.id3nn")),
-                    FaceModel.FACE_LANDMARKS_ESTIMATOR_2A, ProcessingUnit.CPU
-            );
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_age_estimator_v1a.id3nn")),
-                    FaceModel.FACE_AGE_ESTIMATOR_1A, ProcessingUnit.CPU
-            );
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_expression_classifier_v1a.id3nn")),
-                    FaceModel.FACE_EXPRESSION_CLASSIFIER_1A, ProcessingUnit.CPU
-            );
-
-            Log.v(LOG_TAG, "Load models: OK !");
-        } catch (FaceException | IOException e) {
-            e.printStackTrace();
-            Log.e(LOG_TAG, "Error while loading models: " + e.getMessage());
+            featureWarmUpFuture = warmUpExecutor.submit(() -> {
+                readyFuture.get();
+                acquirePortraitModels();
+                try (eu.id3.face.Image warmUpImage = createWarmUpImage();
+                     Portrait warmUpPortrait = processor.createPortrait(warmUpImage)) {
+                    processor.estimateAge(warmUpPortrait);
+                    processor.estimateExpression(warmUpPortrait);
+                    processor.estimateGeometryQuality(warmUpPortrait);
+                    processor.detectOcclusions(warmUpPortrait);
+                    processor.estimateFaceAttributes(warmUpPortrait);
+                    processor.estimatePhotographicQuality(warmUpPortrait);
+                } catch (FaceException e) {
+                    // no face in the grey image, the portrait detection ran anyway
+                }
+                Log.v(LOG_TAG, "Prime feature processors: OK !");
+                return null;
+            });
         }
     }
 
-    public static byte[] readAllBytes(InputStream in) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        copyAllBytes(in, out);
-        return out.toByteArray();
+    /**
+     * Completes when the models needed to process a frame are loaded and primed.
+     */
+    public Future<Void> getReadyFuture() {
+        return readyFuture;
     }
 
     /**
-     * Copies all available data from in to out without closing any stream.
+     * Returns true once frames can be processed.
      */
-    public static void copyAllBytes(InputStream in, OutputStream out)
-            throws IOException {
-        byte[] buffer = new byte[4096];
-        while (true) {
-            int read = in.read(buffer);
-            if (read == -1) {
-                break;
-            }
-            out.write(buffer, 0, read);
+    public boolean isReady() {
+        if (!readyFuture.isDone()) {
+            return false;
+        }
+        try {
+            readyFuture.get();
+            return true;
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a grey image of the processing size used to prime the processors.
+     */
+    private static eu.id3.face.Image createWarmUpImage() {
+        int size = Parameters.maxProcessingImageSize;
+        byte[] yPlane = new byte[size * size];
+        byte[] uvPlane = new byte[size * size / 4];
+        Arrays.fill(yPlane, (byte) 128);
+        Arrays.fill(uvPlane, (byte) 128);
+        return eu.id3.face.Image.fromYuvPlanes(yPlane, uvPlane, uvPlane, size, size, 1, size / 2,
+                PixelFormat.BGR_24_BITS);
+    }
+
+    /**
+     * Waits for the priming of the feature processors, which use the same objects.
+     */
+    private void awaitFeatureWarmUp() {
+        if (featureWarmUpFuture == null) {
+            return;
+        }
+        try {
+            featureWarmUpFuture.get();
+        } catch (ExecutionException e) {
+            Log.w(LOG_TAG, "Error while priming the feature processors: "
+                    + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (CancellationException e) {
+            // the processor is closing
+        }
+        featureWarmUpFuture = null;
+    }
+
+    /**
+     * Acquires the other face analysis models on the first portrait analysis.
+     */
+    private void acquirePortraitModels() throws IOException {
+        if (portraitModels.isEmpty()) {
+            portraitModels.add(modelRegistry.acquire(FaceModel.FACE_POSE_ESTIMATOR_1A));
+            portraitModels.add(modelRegistry.acquire(FaceModel.FACE_OCCLUSION_DETECTOR_2A));
+            portraitModels.add(modelRegistry.acquire(FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A));
+            portraitModels.add(modelRegistry.acquire(FaceModel.FACE_ENCODER_10B));
+            portraitModels.add(modelRegistry.acquire(FaceModel.FACE_LANDMARKS_ESTIMATOR_2A));
+            portraitModels.add(modelRegistry.acquire(FaceModel.FACE_AGE_ESTIMATOR_1A));
+            portraitModels.add(modelRegistry.acquire(FaceModel.FACE_EXPRESSION_CLASSIFIER_1A));
+        }
+    }
+
+    /**
+     * Gives back a portrait bitmap of a result once the UI no longer displays it, so that the
+     * next portraits can be rendered into it.
+     */
+    public void releasePortraitBitmap(Bitmap portraitBitmap) {
+        portraitThumbnail.release(portraitBitmap);
+    }
+
+    /**
+     * Releases the processors and unloads the models.
+     */
+    public void close() {
+        /* Wait for the end of the model loading before unloading them. */
+        warmUpExecutor.shutdownNow();
+        try {
+            warmUpExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (portraitCreated) {
+            portrait.close();
+            portraitCreated = false;
+        }
+        processor.close();
+        if (faceDetector != null) {
+            faceDetector.close();
+            faceDetector = null;
+        }
+        if (modelRegistry != null) {
+            modelRegistry.close();
+            modelRegistry = null;
         }
     }
 
     public DetectedFace detectLargestFace(eu.id3.face.Image image) {
+        /*
+         * In live capture, search around the face of the previous frame when there is one.
+         * The whole frame is still scanned periodically and when the face is lost.
+         */
+        if (Parameters.roiDetection) {
+            return temporalFaceDetector.detectLargestFace(image);
+        }
+
         /* Track faces in the image. */
-        DetectedFaceList detectedFaceList = faceDetector.detectFaces(image);
-        if (detectedFaceList.getCount() > 0) {
-            /* At least one face was detected! Return the largest one. */
-            return detectedFaceList.getLargestFace();
-        } else {
-            /* No face was detected. */
-            return null;
+        long begin = FrameTrace.begin();
+        try (DetectedFaceList detectedFaceList = faceDetector.detectFaces(image)) {
+            FrameTrace.end("detectFaces", begin);
+            if (detectedFaceList.getCount() > 0) {
+                /* At least one face was detected! Return the largest one. */
+                return detectedFaceList.getLargestFace();
+            } else {
+                /* No face was detected. */
+                return null;
+            }
         }
     }
 
     public void resetPortrait()
     {
-        portraitCreated = false;
+        if (portraitCreated) {
+            portrait.close();
+            portraitCreated = false;
+        }
     }
 
     AnalyzeLargestFaceResult analyzeLargestFace(eu.id3.face.Image image, DetectedFace detectedFace) {
+        awaitFeatureWarmUp();
 
         String LOG_TAG = "PortraitProcessor";
 
         PortraitAttributes portraitAttributes = new PortraitAttributes();
 
+        /*
+         * The portrait is created and updated from the whole frame: its geometric attributes
+         * and the ICAO geometry checks measure the position of the face in the image, which a
+         * crop around the face would replace with the margins of the crop.
+         */
         try {
+            acquirePortraitModels();
+
+            long begin = FrameTrace.begin();
             if (!portraitCreated) {
                 portrait = processor.createPortrait(image);
                 portraitCreated = true;
+                FrameTrace.end("createPortrait", begin);
             }
-            else
+            else {
                 processor.updatePortrait(portrait, image);
+                FrameTrace.end("updatePortrait", begin);
+            }
 
+            begin = FrameTrace.begin();
             /* Get age estimation. */
             processor.estimateAge(portrait);
             portraitAttributes.setAge(portrait.getAge());
@@ -180,6 +335,7 @@ public class FaceProcessor {
              * NOTE: must be called after all estimations
              */
             processor.estimatePhotographicQuality(portrait);
+            FrameTrace.end("estimatePortrait", begin);
             PortraitQualityCheckpoints icaoCheckpoints = portrait.getQualityCheckpoints();
 
             /*
@@ -188,44 +344,46 @@ public class FaceProcessor {
              */
             portraitAttributes.setQualityScore(portrait.getQualityScore());
 
+            /* The landmarks and the checkpoints are not displayed by this sample. */
+            landmarks.close();
+            icaoCheckpoints.close();
+
         } catch (Exception e) {
             e.printStackTrace();
             Log.e(LOG_TAG, "Error while processing portrait: " + e.getMessage());
         }
 
-        /* Extracts the portrait image of the detected face to display it. */
-        Rectangle portraitBounds = detectedFace.getPortraitBounds(0.25f, 0.45f, 1.33f);
-        Image portraitImage = image.extractRoi(portraitBounds);
-
-        if (Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT) {
-            portraitImage.flip(true, false);
-        }
-
-        /* Compress the portrait image buffer as a JPEG buffer. */
-        byte[] jpegPortraitImageBuffer = portraitImage.toBuffer(ImageFormat.JPEG, 75.0f);
+        /*
+         * Render the portrait image of the detected face to display it. Its pixels are copied
+         * into a reused bitmap, without compressing it.
+         */
+        long begin = FrameTrace.begin();
+        Bitmap portraitBitmap = portraitThumbnail.render(image, detectedFace,
+                Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT);
+        FrameTrace.end("renderThumbnail", begin);
 
         return new AnalyzeLargestFaceResult(
-                jpegPortraitImageBuffer,
+                portraitBitmap,
                 portraitAttributes,
                 0
         );
     }
 
     class AnalyzeLargestFaceResult {
-        private final byte[] jpegPortraitImageBuffer_;
+        private final Bitmap portraitBitmap_;
         private final PortraitAttributes portraitAttributes_;
         private final int errorCode_;
 
-        public AnalyzeLargestFaceResult(byte[] jpegPortraitImageBuffer,
+        public AnalyzeLargestFaceResult(Bitmap portraitBitmap,
                                         PortraitAttributes portraitAttributes,
                                         int errorCode) {
-            jpegPortraitImageBuffer_ = jpegPortraitImageBuffer;
+            portraitBitmap_ = portraitBitmap;
             portraitAttributes_ = portraitAttributes;
             errorCode_ = errorCode;
         }
 
-        public byte[] getJpegPortraitImageBuffer() {
-            return jpegPortraitImageBuffer_;
+        public Bitmap getPortraitBitmap() {
+            return portraitBitmap_;
         }
 
         public PortraitAttributes getPortraitAttributes() {
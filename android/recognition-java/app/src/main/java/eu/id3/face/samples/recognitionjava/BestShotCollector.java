@@ -0,0 +1,238 @@
+package eu.id3.face.samples.recognitionjava;
+
+import eu.id3.face.DetectedFace;
+import eu.id3.face.Point;
+import eu.id3.face.PointList;
+import eu.id3.face.Rectangle;
+
+/**
+ * Collects the best shots of a face during an enrolment window.
+ *
+ * Instead of enrolling the frame which happens to be current when the enrolment is requested,
+ * every frame of the next Parameters.bestShotWindowMs is scored with cheap measures: the
+ * detection score, the frontality of the face estimated from its landmarks and the sharpness
+ * of the face region. Only the Parameters.bestShotCandidateCount best frames are kept, as
+ * crops around the face, so that the expensive template creation and quality estimation
+ * run on these candidates only.
+ * A BestShotCollector must only be used from the frame processing thread.
+ */
+public class BestShotCollector {
+    /**
+     * A face region kept for the enrolment, with the face in the coordinates of the region.
+     */
+    public static class Candidate {
+        private eu.id3.face.Image image = null;
+        private DetectedFace detectedFace = null;
+        private float score = 0;
+
+        public eu.id3.face.Image getImage() {
+            return image;
+        }
+
+        public DetectedFace getDetectedFace() {
+            return detectedFace;
+        }
+
+        /**
+         * Cheap score of the shot, between 0 and 1.
+         */
+        public float getScore() {
+            return score;
+        }
+
+        private void clear() {
+            if (image != null) {
+                image.close();
+                detectedFace.close();
+                image = null;
+                detectedFace = null;
+            }
+            score = 0;
+        }
+    }
+
+    private final Candidate[] candidates = new Candidate[Parameters.bestShotCandidateCount];
+    private int candidateCount = 0;
+    private boolean collecting = false;
+    private long windowEndNanos = 0;
+    private long scoredCount = 0;
+
+    public BestShotCollector() {
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = new Candidate();
+        }
+    }
+
+    /**
+     * Drops the previous candidates and opens a new collection window.
+     */
+    public void start() {
+        clear();
+        collecting = true;
+        windowEndNanos = System.nanoTime() + Parameters.bestShotWindowMs * 1_000_000L;
+    }
+
+    public boolean isCollecting() {
+        return collecting;
+    }
+
+    /**
+     * Returns true once the window is over and at least one candidate was kept. The window
+     * is extended until a face is seen.
+     */
+    public boolean isComplete() {
+        return collecting && candidateCount > 0 && System.nanoTime() >= windowEndNanos;
+    }
+
+    /**
+     * Scores a detected face and keeps a crop of it if it is among the best shots. The image
+     * and the face are not modified and stay owned by the caller.
+     */
+    public void offer(eu.id3.face.Image image, DetectedFace detectedFace) {
+        if (!collecting) {
+            return;
+        }
+        long begin = FrameTrace.begin();
+        try (Rectangle bounds = detectedFace.getBounds()) {
+            int faceLeft = bounds.getTopLeft().x;
+            int faceTop = bounds.getTopLeft().y;
+            int faceRight = bounds.getBottomRight().x;
+            int faceBottom = bounds.getBottomRight().y;
+            int margin = (int) (Math.max(faceRight - faceLeft, faceBottom - faceTop)
+                    * Parameters.bestShotMarginRatio);
+            int left = Math.max(0, faceLeft - margin);
+            int top = Math.max(0, faceTop - margin);
+            int right = Math.min(image.getWidth(), faceRight + margin);
+            int bottom = Math.min(image.getHeight(), faceBottom + margin);
+            if (right - left < 2 || bottom - top < 2) {
+                return;
+            }
+
+            float cheapScore = detectedFace.getDetectionScore() / 100.0f
+                    * computeFrontality(detectedFace);
+            /* Skip the crop when the shot cannot enter the candidates, even if perfectly sharp. */
+            Candidate worst = findWorstCandidate();
+            if (candidateCount == candidates.length && cheapScore <= worst.score) {
+                return;
+            }
+
+            eu.id3.face.Image crop;
+            try (Rectangle region = TemporalFaceDetector.createRectangle(left, top, right, bottom)) {
+                crop = image.extractRoi(region);
+            }
+            float sharpness = computeSharpness(crop, faceLeft - left, faceTop - top,
+                    faceRight - left, faceBottom - top);
+            float score = cheapScore * sharpness / (sharpness + Parameters.bestShotSharpnessScale);
+            scoredCount++;
+            if (candidateCount == candidates.length && score <= worst.score) {
+                crop.close();
+                return;
+            }
+
+            Candidate candidate = candidateCount < candidates.length
+                    ? candidates[candidateCount++] : worst;
+            candidate.clear();
+            candidate.image = crop;
+            candidate.detectedFace = detectedFace.clone();
+            TemporalFaceDetector.translate(candidate.detectedFace, -left, -top);
+            candidate.score = score;
+        } finally {
+            FrameTrace.end("scoreBestShot", begin);
+        }
+    }
+
+    /**
+     * Returns the number of candidates kept, available with getCandidate().
+     */
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    /**
+     * Returns a candidate, the candidates are not sorted. It stays owned by the collector.
+     */
+    public Candidate getCandidate(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * Number of shots scored since the start of the application.
+     */
+    public long getScoredCount() {
+        return scoredCount;
+    }
+
+    /**
+     * Ends the window and releases the candidates.
+     */
+    public void clear() {
+        for (Candidate candidate : candidates) {
+            candidate.clear();
+        }
+        candidateCount = 0;
+        collecting = false;
+    }
+
+    private Candidate findWorstCandidate() {
+        Candidate worst = candidates[0];
+        for (int i = 1; i < candidateCount; i++) {
+            if (candidates[i].score < worst.score) {
+                worst = candidates[i];
+            }
+        }
+        return worst;
+    }
+
+    /**
+     * Estimates how frontal a face is, from 0 to 1, with the first three landmarks of the
+     * detector: the eyes and the nose. A turned face moves the nose away from the middle of
+     * the eyes, a tilted face moves the eyes off the horizontal.
+     */
+    private static float computeFrontality(DetectedFace detectedFace) {
+        try (PointList landmarks = detectedFace.getLandmarks()) {
+            if (landmarks.getCount() < 3) {
+                return 1.0f;
+            }
+            Point firstEye = landmarks.get(0);
+            Point secondEye = landmarks.get(1);
+            Point nose = landmarks.get(2);
+            float dx = secondEye.x - firstEye.x;
+            float dy = secondEye.y - firstEye.y;
+            float eyeDistance = (float) Math.sqrt(dx * dx + dy * dy);
+            if (eyeDistance < 1) {
+                return 0;
+            }
+            float yaw = Math.abs(nose.x - 0.5f * (firstEye.x + secondEye.x)) / eyeDistance;
+            float roll = Math.abs(dy) / eyeDistance;
+            return Math.max(0, 1 - 2 * yaw) * Math.max(0, 1 - roll);
+        }
+    }
+
+    /**
+     * Estimates the sharpness of the face as the mean squared Laplacian of the green channel,
+     * one pixel out of two in each direction.
+     */
+    private static float computeSharpness(eu.id3.face.Image crop, int left, int top,
+                                          int right, int bottom) {
+        byte[] pixels = crop.getPixels();
+        int stride = crop.getStride();
+        int x0 = Math.max(1, left);
+        int y0 = Math.max(1, top);
+        int x1 = Math.min(crop.getWidth() - 1, right);
+        int y1 = Math.min(crop.getHeight() - 1, bottom);
+        long sum = 0;
+        int count = 0;
+        for (int y = y0; y < y1; y += 2) {
+            int row = y * stride + 1;
+            for (int x = x0; x < x1; x += 2) {
+                int offset = row + 3 * x;
+                int laplacian = 4 * (pixels[offset] & 0xFF)
+                        - (pixels[offset - 3] & 0xFF) - (pixels[offset + 3] & 0xFF)
+                        - (pixels[offset - stride] & 0xFF) - (pixels[offset + stride] & 0xFF);
+                sum += (long) laplacian * laplacian;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : (float) sum / count;
+    }
+}
@@ -1,210 +1,505 @@
 package eu.id3.face.samples.recognitionjava;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.hardware.camera2.CameraCharacteristics;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import eu.id3.face.DetectedFace;
 import eu.id3.face.DetectedFaceList;
 import eu.id3.face.FaceDetector;
 import eu.id3.face.FaceEncoder;
 import eu.id3.face.FaceException;
-import eu.id3.face.FaceLibrary;
-import eu.id3.face.FaceMatcher;
 import eu.id3.face.FaceModel;
 import eu.id3.face.FaceTemplate;
-import eu.id3.face.ImageFormat;
+import eu.id3.face.PixelFormat;
 import eu.id3.face.Portrait;
 import eu.id3.face.PortraitProcessor;
-import eu.id3.face.ProcessingUnit;
+import eu.id3.face.Rectangle;
 
 public class FaceProcessor {
+    private final static String LOG_TAG = "FaceProcessor";
+
+    private ModelRegistry modelRegistry = null;
+    private ModelRegistry.Handle detectorModel = null;
+    private ModelRegistry.Handle encoderModel = null;
+    private final List<ModelRegistry.Handle> qualityModels = new ArrayList<>();
+
     private FaceDetector faceDetector = null;
+    private TemporalFaceDetector temporalFaceDetector = null;
     private FaceEncoder faceEncoder = null;
 
     private PortraitProcessor processor = null;
-    private Portrait portrait = null;
+    private final PortraitThumbnail portraitThumbnail = new PortraitThumbnail();
 
-    private FaceTemplate enrolledTemplate;
+    private MatchingService matchingService = null;
+    private Future<Watchlist> watchlistFuture = null;
+
+    private final ExecutorService warmUpExecutor =
+            Executors.newFixedThreadPool(Parameters.modelLoadingThreadCount);
+    private Future<Void> readyFuture = null;
+    private Future<Void> featureWarmUpFuture = null;
+    private Future<List<ModelRegistry.Handle>> preloadedModels = null;
 
     public FaceProcessor(Context context) {
-        String LOG_TAG = "FaceProcessor";
-        try {
-            /*
-             * Load a face detector.
-             * First load the model from the Assets and then initialize the FaceDetector
-             * object.
-             * Only one FaceDetector object is needed to perform all of your detection
-             * operation.
-             */
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_detector_v4b.id3nn")),
-                    FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
-            faceDetector = new FaceDetector();
-            faceDetector.setConfidenceThreshold(Parameters.detectorConfidenceThreshold);
-            faceDetector.setModel(FaceModel.FACE_DETECTOR_4B);
-            faceDetector.setThreadCount(Parameters.detectorThreadCount);
+        /*
+         * Declare the models used by this processor.
+         * Nothing is loaded until a model is acquired.
+         */
+        modelRegistry = new ModelRegistry(context, Parameters.modelMemoryBudget)
+                .register(FaceModel.FACE_DETECTOR_4B, "models/face_detector_v4b.id3nn")
+                .register(FaceModel.FACE_ENCODER_10B, "models/face_encoder_v9b.id3nn")
+                .register(FaceModel.FACE_POSE_ESTIMATOR_1A, "models/face_pose_estimator_v1a.id3nn")
+                .register(FaceModel.FACE_OCCLUSION_DETECTOR_2A, "models/face_occlusion_detector_v2a.id3nn")
+                .register(FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A, "models/face_attributes_classifier_v2a.id3nn")
+                .register(FaceModel.FACE_LANDMARKS_ESTIMATOR_2A, "models/face_landmarks_estimator_v2a.id3nn");
+
+        /*
+         * Load the models in the background so that the camera preview starts right away.
+         * The detection model is needed for every frame. The models of the enrolment and
+         * verification are loaded in parallel if requested, otherwise on their first use.
+         */
+        Future<List<ModelRegistry.Handle>> detectionModels =
+                modelRegistry.preload(warmUpExecutor, FaceModel.FACE_DETECTOR_4B);
+        if (Parameters.preloadFeatureModels) {
+            preloadedModels = modelRegistry.preload(warmUpExecutor,
+                    FaceModel.FACE_ENCODER_10B,
+                    FaceModel.FACE_LANDMARKS_ESTIMATOR_2A,
+                    FaceModel.FACE_POSE_ESTIMATOR_1A,
+                    FaceModel.FACE_OCCLUSION_DETECTOR_2A,
+                    FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A);
+        }
+        readyFuture = warmUpExecutor.submit(() -> {
+            try {
+                /*
+                 * Load a face detector.
+                 * Only one FaceDetector object is needed to perform all of your detection
+                 * operation.
+                 */
+                detectorModel = detectionModels.get().get(0);
+                faceDetector = new FaceDetector();
+                faceDetector.setConfidenceThreshold(Parameters.detectorConfidenceThreshold);
+                faceDetector.setModel(FaceModel.FACE_DETECTOR_4B);
+                faceDetector.setThreadCount(Parameters.detectorThreadCount);
+                temporalFaceDetector = new TemporalFaceDetector(faceDetector);
+
+                /* Run a first detection to prime the native kernels. */
+                try (eu.id3.face.Image warmUpImage = createWarmUpImage()) {
+                    faceDetector.detectFaces(warmUpImage).close();
+                }
+
+                Log.v(LOG_TAG, "Load models: OK !");
+                return null;
+            } catch (Exception e) {
+                e.printStackTrace();
+                Log.e(LOG_TAG, "Error while loading models: " + e.getMessage());
+                throw e;
+            }
+        });
+
+        /*
+         * Load the enrolled identities in the background too. They are compared with the
+         * matchers of the matching service, created once for all the identifications.
+         */
+        matchingService = new MatchingService(Parameters.identificationThreadCount);
+        File watchlistFile = new File(context.getFilesDir(), Parameters.watchlistFileName);
+        watchlistFuture = warmUpExecutor.submit(() ->
+                Watchlist.open(watchlistFile, matchingService));
+
+        processor = new PortraitProcessor();
 
+        if (Parameters.preloadFeatureModels) {
             /*
-             * Load a face encoder.
-             * First load the model from the Assets and then initialize the FaceEncoder
-             * object.
+             * Prime the encoder and the portrait processor with the same grey image once the
+             * detection is ready, so that the first enrolment or identification does not pay
+             * for their first run either.
              */
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_encoder_v9b.id3nn")),
-                    FaceModel.FACE_ENCODER_10B, ProcessingUnit.CPU);
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_pose_estimator_v1a.id3nn")),
-                    FaceModel.FACE_POSE_ESTIMATOR_1A, ProcessingUnit.CPU);
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_occlusion_detector_v2a.id3nn")),
-                    FaceModel.FACE_OCCLUSION_DETECTOR_2A, ProcessingUnit.CPU);
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_attributes_classifier_v2a.id3nn")),
-                    FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A, ProcessingUnit.CPU);
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_landmarks_estimator_v2a.id3nn")),
-                    FaceModel.FACE_LANDMARKS_ESTIMATOR_2A, ProcessingUnit.CPU);
+            featureWarmUpFuture = warmUpExecutor.submit(() -> {
+                readyFuture.get();
+                try (eu.id3.face.Image warmUpImage = createWarmUpImage();
+                     DetectedFace warmUpFace = createWarmUpFace()) {
+                    getFaceEncoder().createTemplate(warmUpImage, warmUpFace).close();
+                    try {
+                        computeQuality(warmUpImage, warmUpFace);
+                    } catch (FaceException e) {
+                        // no face in the grey image, the portrait detection ran anyway
+                    }
+                }
+                Log.v(LOG_TAG, "Prime feature processors: OK !");
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Completes when the models needed to process a frame are loaded and primed.
+     */
+    public Future<Void> getReadyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * Returns true once frames can be processed.
+     */
+    public boolean isReady() {
+        if (!readyFuture.isDone()) {
+            return false;
+        }
+        try {
+            readyFuture.get();
+            return true;
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a grey image of the processing size used to prime the processors.
+     */
+    private static eu.id3.face.Image createWarmUpImage() {
+        int size = Parameters.maxProcessingImageSize;
+        byte[] yPlane = new byte[size * size];
+        byte[] uvPlane = new byte[size * size / 4];
+        Arrays.fill(yPlane, (byte) 128);
+        Arrays.fill(uvPlane, (byte) 128);
+        return eu.id3.face.Image.fromYuvPlanes(yPlane, uvPlane, uvPlane, size, size, 1, size / 2,
+                PixelFormat.BGR_24_BITS);
+    }
+
+    /**
+     * Creates a face in the middle of the warm-up image, for the processors working on a
+     * detected face.
+     */
+    private static DetectedFace createWarmUpFace() {
+        int size = Parameters.maxProcessingImageSize;
+        DetectedFace face = new DetectedFace();
+        try (Rectangle bounds = TemporalFaceDetector.createRectangle(size / 4, size / 4,
+                size * 3 / 4, size * 3 / 4)) {
+            face.setBounds(bounds);
+        }
+        return face;
+    }
+
+    /**
+     * Waits for the priming of the feature processors, which use the same objects.
+     */
+    private void awaitFeatureWarmUp() {
+        if (featureWarmUpFuture == null) {
+            return;
+        }
+        try {
+            featureWarmUpFuture.get();
+        } catch (ExecutionException e) {
+            Log.w(LOG_TAG, "Error while priming the feature processors: "
+                    + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (CancellationException e) {
+            // the processor is closing
+        }
+        featureWarmUpFuture = null;
+    }
+
+    /**
+     * Initializes the face encoder on the first enrolment or verification.
+     */
+    private FaceEncoder getFaceEncoder() throws IOException {
+        if (faceEncoder == null) {
+            encoderModel = modelRegistry.acquire(FaceModel.FACE_ENCODER_10B);
             faceEncoder = new FaceEncoder();
             faceEncoder.setModel(FaceModel.FACE_ENCODER_10B);
             faceEncoder.setThreadCount(Parameters.encoderThreadCount);
+        }
+        return faceEncoder;
+    }
 
-            processor = new PortraitProcessor();
+    /**
+     * Returns the watchlist, once loaded.
+     */
+    private Watchlist getWatchlist() throws IOException {
+        try {
+            return watchlistFuture.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Error while loading the watchlist", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Watchlist loading interrupted", e);
+        }
+    }
 
-            Log.v(LOG_TAG, "Load models: OK !");
-        } catch (FaceException | IOException e) {
-            e.printStackTrace();
-            Log.e(LOG_TAG, "Error while loading models: " + e.getMessage());
+    /**
+     * Acquires the models needed by the portrait quality estimation on its first use.
+     */
+    private void acquireQualityModels() throws IOException {
+        if (qualityModels.isEmpty()) {
+            qualityModels.add(modelRegistry.acquire(FaceModel.FACE_LANDMARKS_ESTIMATOR_2A));
+            qualityModels.add(modelRegistry.acquire(FaceModel.FACE_POSE_ESTIMATOR_1A));
+            qualityModels.add(modelRegistry.acquire(FaceModel.FACE_OCCLUSION_DETECTOR_2A));
+            qualityModels.add(modelRegistry.acquire(FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A));
         }
     }
 
-    public static byte[] readAllBytes(InputStream in) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        copyAllBytes(in, out);
-        return out.toByteArray();
+    /**
+     * Gives back a portrait bitmap of a result once the UI no longer displays it, so that the
+     * next portraits can be rendered into it.
+     */
+    public void releasePortraitBitmap(Bitmap portraitBitmap) {
+        portraitThumbnail.release(portraitBitmap);
     }
 
     /**
-     * Copies all available data from in to out without closing any stream.
+     * Releases the processors and unloads the models.
      */
-    public static void copyAllBytes(InputStream in, OutputStream out)
-            throws IOException {
-        byte[] buffer = new byte[4096];
-        while (true) {
-            int read = in.read(buffer);
-            if (read == -1) {
-                break;
+    public void close() {
+        /* Wait for the end of the model loading before unloading them. */
+        warmUpExecutor.shutdownNow();
+        try {
+            warmUpExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (faceEncoder != null) {
+            faceEncoder.close();
+            faceEncoder = null;
+        }
+        if (faceDetector != null) {
+            faceDetector.close();
+            faceDetector = null;
+        }
+        if (watchlistFuture != null) {
+            /* The loading never ran if the executor was stopped before. */
+            if (watchlistFuture.isDone()) {
+                try {
+                    watchlistFuture.get().close();
+                } catch (ExecutionException | InterruptedException | CancellationException e) {
+                    // the watchlist was not loaded
+                }
             }
-            out.write(buffer, 0, read);
+            watchlistFuture = null;
+        }
+        if (matchingService != null) {
+            matchingService.close();
+            matchingService = null;
+        }
+        if (processor != null) {
+            processor.close();
+            processor = null;
+        }
+        if (modelRegistry != null) {
+            modelRegistry.close();
+            modelRegistry = null;
         }
     }
 
     public DetectedFace detectLargestFace(eu.id3.face.Image image) {
+        /*
+         * In live capture, search around the face of the previous frame when there is one.
+         * The whole frame is still scanned periodically and when the face is lost.
+         */
+        if (Parameters.roiDetection) {
+            return temporalFaceDetector.detectLargestFace(image);
+        }
+
         /* Track faces in the image. */
-        DetectedFaceList detectedFaceList = faceDetector.detectFaces(image);
-        if (detectedFaceList.getCount() > 0) {
-            /* At least one face was detected! Return the largest one. */
-            return detectedFaceList.getLargestFace();
-        } else {
-            /* No face was detected. */
-            return null;
+        long begin = FrameTrace.begin();
+        try (DetectedFaceList detectedFaceList = faceDetector.detectFaces(image)) {
+            FrameTrace.end("detectFaces", begin);
+            if (detectedFaceList.getCount() > 0) {
+                /* At least one face was detected! Return the largest one. */
+                return detectedFaceList.getLargestFace();
+            } else {
+                /* No face was detected. */
+                return null;
+            }
         }
     }
 
-    EnrollLargestFaceResult enrollLargestFace(eu.id3.face.Image image, DetectedFace detectedFace) {
-        /* Create template of the detected face. */
+    /**
+     * Enrolls the best of the shots kept by the collector in the watchlist, as a new identity.
+     * The quality is only computed for these candidates, and the template for the best one so
+     * far; the template of the best quality is enrolled.
+     */
+    EnrollLargestFaceResult enrollBestShot(BestShotCollector collector) {
+        awaitFeatureWarmUp();
+        FaceTemplate bestTemplate = null;
+        BestShotCollector.Candidate bestCandidate = null;
+        int bestQuality = -1;
         try {
-            enrolledTemplate = faceEncoder.createTemplate(image, detectedFace);
-
-            /*
-             * Compute template quality to make sure it will good enough for face
-             * recognition.
-             */
-            int quality = computeQuality(image);
-
-            /* Extracts the portrait image of the detected face to display it. */
-            eu.id3.face.Rectangle portraitBounds = detectedFace.getPortraitBounds(0.25f, 0.45f, 1.33f);
-            eu.id3.face.Image portraitImage = image.extractRoi(portraitBounds);
-            if (Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT) {
-                portraitImage.flip(true, false);
+            for (int i = 0; i < collector.getCandidateCount(); i++) {
+                BestShotCollector.Candidate candidate = collector.getCandidate(i);
+                /*
+                 * Compute template quality to make sure it will good enough for face
+                 * recognition.
+                 */
+                int quality = computeQuality(candidate.getImage(), candidate.getDetectedFace());
+                if (quality < bestQuality || (quality == bestQuality
+                        && candidate.getScore() <= bestCandidate.getScore())) {
+                    continue;
+                }
+
+                /* Create template of the best candidate so far only. */
+                FaceTemplate template = createTemplate(candidate.getImage(),
+                        candidate.getDetectedFace());
+                if (bestTemplate != null) {
+                    bestTemplate.close();
+                }
+                bestTemplate = template;
+                bestCandidate = candidate;
+                bestQuality = quality;
             }
+        } catch (FaceException | IOException e) {
+            // handle exception
+        }
 
-            /* Compress the portrait image buffer as a JPEG buffer. */
-            byte[] jpegPortraitImageBuffer = portraitImage.toBuffer(ImageFormat.JPEG, 75.0f);
+        if (bestTemplate == null) {
+            return new EnrollLargestFaceResult(null, 0, null);
+        }
 
-            return new EnrollLargestFaceResult(jpegPortraitImageBuffer, quality);
-        } catch (FaceException e) {
-            // handle exception
+        /* Append the template to the watchlist, which takes ownership of it. */
+        String label;
+        try {
+            Watchlist watchlist = getWatchlist();
+            label = "Identity " + (watchlist.size() + 1);
+            watchlist.add(label, bestTemplate);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error while enrolling: " + e.getMessage());
+            bestTemplate.close();
+            return new EnrollLargestFaceResult(null, 0, null);
         }
 
-        return new EnrollLargestFaceResult(null, 0);
+        /*
+         * Render the portrait image of the enrolled face to display it. Its pixels are copied
+         * into a reused bitmap, without compressing it.
+         */
+        long begin = FrameTrace.begin();
+        Bitmap portraitBitmap = portraitThumbnail.render(bestCandidate.getImage(),
+                bestCandidate.getDetectedFace(),
+                Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT);
+        FrameTrace.end("renderThumbnail", begin);
+
+        return new EnrollLargestFaceResult(portraitBitmap, bestQuality, label);
     }
 
-    VerifyLargestFaceResult verifyLargestFace(eu.id3.face.Image image, DetectedFace detectedFace) {
+    /**
+     * Searches the largest face in the watchlist.
+     */
+    IdentifyLargestFaceResult identifyLargestFace(eu.id3.face.Image image, DetectedFace detectedFace) {
+        awaitFeatureWarmUp();
         /* Create template of the detected face. */
-        try {
-            FaceTemplate probeTemplate = faceEncoder.createTemplate(image, detectedFace);
+        try (FaceTemplate probeTemplate = createTemplate(image, detectedFace)) {
 
             /*
              * Compute template quality to make sure it will good enough for face
              * recognition.
              */
-            int quality = computeQuality(image);
+            int quality = computeQuality(image, detectedFace);
 
             /*
-             * Initialize a face matcher and compare probe template to the previously
-             * enrolled one.
+             * Compare the probe template to the enrolled ones, the search stops at the first
+             * score reaching the decision threshold.
              */
-            FaceMatcher faceMatcher = new FaceMatcher();
-            int score = faceMatcher.compareTemplates(probeTemplate, enrolledTemplate);
+            long begin = FrameTrace.begin();
+            Watchlist.Match match = getWatchlist().identify(probeTemplate,
+                    Parameters.fmrThreshold.getValue());
+            FrameTrace.end("identify", begin);
 
-            return new VerifyLargestFaceResult(quality, score);
-        } catch (FaceException e) {
+            return new IdentifyLargestFaceResult(quality, match.getScore(), match.getLabel());
+        } catch (FaceException | IOException e) {
             // handle exception
         }
 
-        return new VerifyLargestFaceResult(0, 0);
+        return new IdentifyLargestFaceResult(0, 0, null);
+    }
+
+    private FaceTemplate createTemplate(eu.id3.face.Image image, DetectedFace detectedFace)
+            throws IOException {
+        FaceEncoder encoder = getFaceEncoder();
+        long begin = FrameTrace.begin();
+        FaceTemplate template = encoder.createTemplate(image, detectedFace);
+        FrameTrace.end("createTemplate", begin);
+        return template;
     }
 
-    int computeQuality(eu.id3.face.Image image) {
-        portrait = processor.createPortrait(image);
-        processor.detectOcclusions(portrait);
-        processor.estimateFaceAttributes(portrait);
-        processor.estimatePhotographicQuality(portrait);
+    /**
+     * Estimates the quality of a detected face. The portrait is created from the portrait
+     * bounds of the face only, so the portrait processor does not detect the face again in
+     * the whole frame.
+     */
+    int computeQuality(eu.id3.face.Image image, DetectedFace detectedFace) throws IOException {
+        acquireQualityModels();
+        long begin = FrameTrace.begin();
+        try (eu.id3.face.Image portraitImage = extractPortraitImage(image, detectedFace);
+             Portrait portrait = processor.createPortrait(portraitImage)) {
+            FrameTrace.end("createPortrait", begin);
+            begin = FrameTrace.begin();
+            processor.detectOcclusions(portrait);
+            processor.estimateFaceAttributes(portrait);
+            processor.estimatePhotographicQuality(portrait);
+            FrameTrace.end("estimateQuality", begin);
+
+            return portrait.getQualityScore();
+        }
+    }
 
-        return portrait.getQualityScore();
+    /**
+     * Crops the region of the frame around a detected face, with the margins of a portrait.
+     */
+    private static eu.id3.face.Image extractPortraitImage(eu.id3.face.Image image,
+                                                          DetectedFace detectedFace) {
+        try (Rectangle portraitBounds = detectedFace.getPortraitBounds(0.25f, 0.45f, 1.33f)) {
+            return image.extractRoi(portraitBounds);
+        }
     }
 
     static class EnrollLargestFaceResult {
-        private final byte[] jpegPortraitImageBuffer_;
+        private final Bitmap portraitBitmap_;
         private final int quality_;
+        private final String label_;
 
-        public EnrollLargestFaceResult(byte[] jpegPortraitImageBuffer, int quality) {
-            jpegPortraitImageBuffer_ = jpegPortraitImageBuffer;
+        public EnrollLargestFaceResult(Bitmap portraitBitmap, int quality, String label) {
+            portraitBitmap_ = portraitBitmap;
             quality_ = quality;
+            label_ = label;
         }
 
-        public byte[] getJpegPortraitImageBuffer() {
-            return jpegPortraitImageBuffer_;
+        public Bitmap getPortraitBitmap() {
+            return portraitBitmap_;
         }
 
         public int getQuality() {
             return quality_;
         }
+
+        /**
+         * Identity label of the enrolled template, null if nothing was enrolled.
+         */
+        public String getLabel() {
+            return label_;
+        }
     }
 
-    class VerifyLargestFaceResult {
+    class IdentifyLargestFaceResult {
         private final int quality_;
         private final int score_;
+        private final String label_;
 
-        public VerifyLargestFaceResult(int quality, int score) {
+        public IdentifyLargestFaceResult(int quality, int score, String label) {
             score_ = score;
             quality_ = quality;
+            label_ = label;
         }
 
         public int getScore() {
@@ -214,5 +509,12 @@ public class FaceProcessor {
         public int getQuality() {
             return quality_;
         }
+
+        /**
+         * Identity label of the best match, null if the watchlist is empty.
+         */
+        public String getLabel() {
+            return label_;
+        }
     }
 }
@@ -0,0 +1,261 @@
+package eu.id3.face.samples.recognitionjava;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+import eu.id3.face.PixelFormat;
+
+/**
+ * Converts YUV_420_888 camera frames to id3 Face SDK images without allocating memory
+ * on every frame.
+ *
+ * toImage() copies the planes of the camera image into buffers which are kept from one
+ * frame to the next, and only reallocated when the size of the frames changes.
+ * toProcessingImage() rotates and downscales the frame while reading it: only the
+ * sampled pixels are read from the camera planes, so the SDK converts an image of the
+ * processing size instead of the full frame.
+ * A FrameIngest must only be used from the frame processing thread.
+ */
+public class FrameIngest {
+    private final static String LOG_TAG = "FrameIngest";
+
+    private final byte[][] planeBuffers = new byte[3][];
+
+    /* Output planes and sampling tables of toProcessingImage(), see updateSampling(). */
+    private byte[] yOutput = new byte[0];
+    private byte[] uOutput = new byte[0];
+    private byte[] vOutput = new byte[0];
+    private int[] yColumnOffsets = new int[0];
+    private int[] yRowOffsets = new int[0];
+    private int[] uvColumnOffsets = new int[0];
+    private int[] uvRowOffsets = new int[0];
+    private final int[] samplingKey = new int[7];
+    private int outputWidth = 0;
+    private int outputHeight = 0;
+    private float downscaleRatio = 1.0f;
+    private long allocatedBytes = 0;
+    private long lastFrameAllocatedBytes = 0;
+    private long frameCount = 0;
+
+    /**
+     * Creates an id3 Face SDK image from the camera image.
+     * The camera image is left open.
+     */
+    public eu.id3.face.Image toImage(android.media.Image image, PixelFormat pixelFormat) {
+        android.media.Image.Plane[] planes = image.getPlanes();
+        long begin = FrameTrace.begin();
+        lastFrameAllocatedBytes = 0;
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer planeBuffer = planes[i].getBuffer();
+            planeBuffer.rewind();
+            int size = planeBuffer.remaining();
+            if (planeBuffers[i] == null || planeBuffers[i].length != size) {
+                planeBuffers[i] = new byte[size];
+                lastFrameAllocatedBytes += size;
+            }
+            planeBuffer.get(planeBuffers[i]);
+        }
+        FrameTrace.end("copyPlanes", begin);
+        frameCount++;
+        if (lastFrameAllocatedBytes > 0) {
+            allocatedBytes += lastFrameAllocatedBytes;
+            Log.v(LOG_TAG, "Allocated " + lastFrameAllocatedBytes + " bytes for "
+                    + image.getWidth() + "x" + image.getHeight() + " frames");
+        }
+
+        begin = FrameTrace.begin();
+        eu.id3.face.Image converted = eu.id3.face.Image.fromYuvPlanes(
+                planeBuffers[0],
+                planeBuffers[1],
+                planeBuffers[2],
+                image.getWidth(),
+                image.getHeight(),
+                planes[1].getPixelStride(),
+                planes[1].getRowStride(),
+                pixelFormat
+        );
+        FrameTrace.end("fromYuvPlanes", begin);
+        return converted;
+    }
+
+    /**
+     * Creates an id3 Face SDK image from the camera image, rotated clockwise by
+     * rotationDegrees (a multiple of 90, as for Image.rotate()) and downscaled so that
+     * its largest side does not exceed maxSize, in a single pass.
+     * Pixels are sampled with nearest neighbour interpolation.
+     * The camera image is left open.
+     */
+    public eu.id3.face.Image toProcessingImage(android.media.Image image, int rotationDegrees,
+                                               int maxSize) {
+        android.media.Image.Plane[] planes = image.getPlanes();
+        ByteBuffer yPlane = planes[0].getBuffer();
+        ByteBuffer uPlane = planes[1].getBuffer();
+        ByteBuffer vPlane = planes[2].getBuffer();
+        long begin = FrameTrace.begin();
+        lastFrameAllocatedBytes = 0;
+        updateSampling(image.getWidth(), image.getHeight(), planes[0].getRowStride(),
+                planes[1].getRowStride(), planes[1].getPixelStride(), rotationDegrees, maxSize);
+
+        int index = 0;
+        for (int y = 0; y < outputHeight; y++) {
+            int rowOffset = yRowOffsets[y];
+            for (int x = 0; x < outputWidth; x++) {
+                yOutput[index++] = yPlane.get(rowOffset + yColumnOffsets[x]);
+            }
+        }
+        index = 0;
+        for (int y = 0; y < outputHeight / 2; y++) {
+            int rowOffset = uvRowOffsets[y];
+            for (int x = 0; x < outputWidth / 2; x++) {
+                int offset = rowOffset + uvColumnOffsets[x];
+                uOutput[index] = uPlane.get(offset);
+                vOutput[index++] = vPlane.get(offset);
+            }
+        }
+        FrameTrace.end("samplePlanes", begin);
+        frameCount++;
+
+        /* The output planes are planar I420. */
+        begin = FrameTrace.begin();
+        eu.id3.face.Image converted = eu.id3.face.Image.fromYuvPlanes(yOutput, uOutput, vOutput,
+                outputWidth, outputHeight, 1, outputWidth / 2, PixelFormat.BGR_24_BITS);
+        FrameTrace.end("fromYuvPlanes", begin);
+        return converted;
+    }
+
+    /**
+     * Ratio between the size of the last processing image and the size of the camera
+     * frame (before rotation), like the value returned by Image.downscale().
+     */
+    public float getDownscaleRatio() {
+        return downscaleRatio;
+    }
+
+    /**
+     * Computes, for each output column and row, the offset of the sampled pixel in the
+     * camera planes. The offset of an output pixel is the sum of the offset of its column
+     * and the offset of its row, whatever the rotation.
+     */
+    private void updateSampling(int width, int height, int yRowStride, int uvRowStride,
+                                int uvPixelStride, int rotationDegrees, int maxSize) {
+        if (outputWidth > 0 && samplingKey[0] == width && samplingKey[1] == height
+                && samplingKey[2] == yRowStride && samplingKey[3] == uvRowStride
+                && samplingKey[4] == uvPixelStride && samplingKey[5] == rotationDegrees
+                && samplingKey[6] == maxSize) {
+            return;
+        }
+        samplingKey[0] = width;
+        samplingKey[1] = height;
+        samplingKey[2] = yRowStride;
+        samplingKey[3] = uvRowStride;
+        samplingKey[4] = uvPixelStride;
+        samplingKey[5] = rotationDegrees;
+        samplingKey[6] = maxSize;
+
+        /* Size before rotation, even so that the chroma planes are exactly half size. */
+        float scale = Math.max(1.0f, (float) Math.max(width, height) / maxSize);
+        int scaledWidth = Math.max(2, (int) (width / scale) & ~1);
+        int scaledHeight = Math.max(2, (int) (height / scale) & ~1);
+        downscaleRatio = 1.0f / scale;
+        boolean transposed = rotationDegrees == 90 || rotationDegrees == 270;
+        outputWidth = transposed ? scaledHeight : scaledWidth;
+        outputHeight = transposed ? scaledWidth : scaledHeight;
+
+        if (yOutput.length != outputWidth * outputHeight) {
+            yOutput = new byte[outputWidth * outputHeight];
+            uOutput = new byte[yOutput.length / 4];
+            vOutput = new byte[yOutput.length / 4];
+            yColumnOffsets = new int[outputWidth];
+            yRowOffsets = new int[outputHeight];
+            uvColumnOffsets = new int[outputWidth / 2];
+            uvRowOffsets = new int[outputHeight / 2];
+            lastFrameAllocatedBytes = yOutput.length * 3L / 2 + (outputWidth + outputHeight) * 6L;
+            allocatedBytes += lastFrameAllocatedBytes;
+            Log.v(LOG_TAG, "Allocated " + lastFrameAllocatedBytes + " bytes for "
+                    + outputWidth + "x" + outputHeight + " processing images");
+        }
+
+        for (int x = 0; x < outputWidth; x++) {
+            yColumnOffsets[x] = sampleOffset(x, rotationDegrees, scale, width, height,
+                    scaledWidth, scaledHeight, yRowStride, 1, true, false);
+        }
+        for (int y = 0; y < outputHeight; y++) {
+            yRowOffsets[y] = sampleOffset(y, rotationDegrees, scale, width, height,
+                    scaledWidth, scaledHeight, yRowStride, 1, false, false);
+        }
+        for (int x = 0; x < outputWidth / 2; x++) {
+            uvColumnOffsets[x] = sampleOffset(2 * x, rotationDegrees, scale, width, height,
+                    scaledWidth, scaledHeight, uvRowStride, uvPixelStride, true, true);
+        }
+        for (int y = 0; y < outputHeight / 2; y++) {
+            uvRowOffsets[y] = sampleOffset(2 * y, rotationDegrees, scale, width, height,
+                    scaledWidth, scaledHeight, uvRowStride, uvPixelStride, false, true);
+        }
+    }
+
+    /**
+     * Offset in a camera plane contributed by an output column (column true) or row.
+     * Rotating clockwise by 90 degrees, output column x comes from the scaled row
+     * scaledHeight - 1 - x and output row y from the scaled column y.
+     */
+    private static int sampleOffset(int position, int rotationDegrees, float scale, int width,
+                                    int height, int scaledWidth, int scaledHeight,
+                                    int rowStride, int pixelStride, boolean column,
+                                    boolean chroma) {
+        boolean fromColumn;
+        int scaledPosition;
+        switch (rotationDegrees) {
+            case 90:
+                fromColumn = !column;
+                scaledPosition = column ? scaledHeight - 1 - position : position;
+                break;
+            case 180:
+                fromColumn = column;
+                scaledPosition = column ? scaledWidth - 1 - position : scaledHeight - 1 - position;
+                break;
+            case 270:
+                fromColumn = !column;
+                scaledPosition = column ? position : scaledWidth - 1 - position;
+                break;
+            default:
+                fromColumn = column;
+                scaledPosition = position;
+                break;
+        }
+        int limit = fromColumn ? width - 1 : height - 1;
+        int source = Math.min(limit, (int) ((scaledPosition + 0.5f) * scale));
+        if (chroma) {
+            source /= 2;
+        }
+        return fromColumn ? source * pixelStride : source * rowStride;
+    }
+
+    /**
+     * Bytes allocated by the last conversion, zero once the buffers are sized.
+     */
+    public long getLastFrameAllocatedBytes() {
+        return lastFrameAllocatedBytes;
+    }
+
+    /**
+     * Bytes allocated since the creation of this object.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Average number of bytes allocated per conversion since the creation of this object.
+     */
+    public long getAllocatedBytesPerFrame() {
+        return frameCount == 0 ? 0 : allocatedBytes / frameCount;
+    }
+
+    /**
+     * Number of conversions, by toImage() or toProcessingImage().
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+}
@@ -0,0 +1,163 @@
+package eu.id3.face.samples.recognitionjava;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the SDK objects created while a frame is processed and closes them at the end of the
+ * frame, instead of leaving their native memory to the finalizer.
+ *
+ * Objects are registered where they are created:
+ *     eu.id3.face.Image processingImage = frameResources.track(frameIngest.toImage(...));
+ * and closed in reverse order by close(). An object handed to another owner, e.g. the
+ * AnalysisLane, is taken back with detach() and closed by that owner with release().
+ *
+ * The live object and native byte counters cover the objects of all the frames being
+ * processed, including the detached ones until their new owner releases them. They go back
+ * to zero once the processing stops: a count that keeps growing over a long session points
+ * to objects that are not released. The native size is estimated from the pixels of the
+ * images, which account for most of the memory of a frame; the SDK does not expose the size
+ * of the other objects, which are only counted.
+ * A FrameResources is reused from one frame to the next by a single thread.
+ */
+public class FrameResources implements AutoCloseable {
+    private final static String LOG_TAG = "FrameResources";
+
+    private final static AtomicLong liveObjectCount = new AtomicLong();
+    private final static AtomicLong liveNativeBytes = new AtomicLong();
+    private final static AtomicLong peakNativeBytes = new AtomicLong();
+    private final static AtomicLong releasedObjectCount = new AtomicLong();
+    /* Estimated native size of each detached object not released yet. */
+    private final static Map<AutoCloseable, Long> detachedBytes =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final ArrayList<AutoCloseable> resources = new ArrayList<>();
+    /* Estimated native size of each resource when it was registered. */
+    private long[] resourceBytes = new long[16];
+    private long nativeBytes = 0;
+
+    /**
+     * Registers an object to close at the end of the frame and returns it. Null is ignored.
+     */
+    public <T extends AutoCloseable> T track(T resource) {
+        if (resource != null) {
+            long bytes = estimateNativeBytes(resource);
+            if (resources.size() == resourceBytes.length) {
+                resourceBytes = Arrays.copyOf(resourceBytes, 2 * resourceBytes.length);
+            }
+            resourceBytes[resources.size()] = bytes;
+            resources.add(resource);
+            nativeBytes += bytes;
+            liveObjectCount.incrementAndGet();
+            long live = liveNativeBytes.addAndGet(bytes);
+            long peak = peakNativeBytes.get();
+            while (live > peak && !peakNativeBytes.compareAndSet(peak, live)) {
+                peak = peakNativeBytes.get();
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * Hands a registered object over to another owner, which becomes responsible for
+     * closing it with release(). The object stays counted as live until then. Returns the
+     * object.
+     */
+    public <T extends AutoCloseable> T detach(T resource) {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            if (resources.get(i) == resource) {
+                long bytes = resourceBytes[i];
+                System.arraycopy(resourceBytes, i + 1, resourceBytes, i, resources.size() - i - 1);
+                resources.remove(i);
+                nativeBytes -= bytes;
+                detachedBytes.put(resource, bytes);
+                break;
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * Closes an object taken back with detach() and removes it from the live counters.
+     * May be called from any thread. Null is ignored.
+     */
+    public static void release(AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Error while releasing a resource: " + e.getMessage());
+        }
+        Long bytes = detachedBytes.remove(resource);
+        if (bytes != null) {
+            liveObjectCount.decrementAndGet();
+            liveNativeBytes.addAndGet(-bytes);
+            releasedObjectCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes the objects of the frame, the last registered first.
+     */
+    @Override
+    public void close() {
+        int count = resources.size();
+        for (int i = count - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Error while releasing a resource: " + e.getMessage());
+            }
+        }
+        resources.clear();
+        liveObjectCount.addAndGet(-count);
+        liveNativeBytes.addAndGet(-nativeBytes);
+        releasedObjectCount.addAndGet(count);
+        nativeBytes = 0;
+    }
+
+    private static long estimateNativeBytes(AutoCloseable resource) {
+        if (resource instanceof eu.id3.face.Image) {
+            eu.id3.face.Image image = (eu.id3.face.Image) resource;
+            return (long) image.getStride() * image.getHeight();
+        }
+        return 0;
+    }
+
+    /**
+     * Number of registered objects not released yet.
+     */
+    public static long getLiveObjectCount() {
+        return liveObjectCount.get();
+    }
+
+    /**
+     * Estimated native size of the registered objects not released yet, in bytes.
+     */
+    public static long getLiveNativeBytes() {
+        return liveNativeBytes.get();
+    }
+
+    /**
+     * Highest value reached by getLiveNativeBytes().
+     */
+    public static long getPeakNativeBytes() {
+        return peakNativeBytes.get();
+    }
+
+    /**
+     * Number of objects released at the end of a frame or by their new owner since the start
+     * of the application.
+     */
+    public static long getReleasedObjectCount() {
+        return releasedObjectCount.get();
+    }
+}
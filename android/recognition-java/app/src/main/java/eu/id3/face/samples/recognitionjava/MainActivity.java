@@ -3,7 +3,6 @@ package eu.id3.face.samples.recognitionjava;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.util.Log;
 import android.widget.Button;
@@ -31,13 +30,14 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
      * Face processor containing id3 Face SDK method calls for face detection and face recognition
      */
     private FaceProcessor faceProcessor;
+    /* Portrait bitmap rendered by the face processor and displayed, given back when replaced. */
+    private Bitmap displayedPortraitBitmap = null;
 
     /**
      * State variables
      */
     private boolean isCapturing = false;
     private boolean isCameraPaused = false;
-    private boolean isTemplateEnrolled = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -60,36 +60,53 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
         setupViewElements();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        /* Release the processors and unload the models. */
+        faceProcessor.close();
+    }
+
+    /**
+     * Displays a portrait rendered by the face processor, or the empty avatar if null, and
+     * gives the previously displayed bitmap back to the face processor.
+     */
+    private void showPortrait(Bitmap portraitBitmap) {
+        if (portraitBitmap != null) {
+            enrolledFaceView.setImageBitmap(portraitBitmap);
+        } else {
+            enrolledFaceView.setImageResource(R.drawable.empty_avatar);
+        }
+        faceProcessor.releasePortraitBitmap(displayedPortraitBitmap);
+        displayedPortraitBitmap = portraitBitmap;
+    }
+
     public void onLargestFaceEnrolled(FaceProcessor.EnrollLargestFaceResult enrollLargestFaceResult) {
         runOnUiThread(() -> {
-            byte[] jpegPortraitImageBuffer = enrollLargestFaceResult.getJpegPortraitImageBuffer();
+            Bitmap portraitBitmap = enrollLargestFaceResult.getPortraitBitmap();
             int quality = enrollLargestFaceResult.getQuality();
+            String label = enrollLargestFaceResult.getLabel();
+            if (label == null) {
+                return;
+            }
 
-            /* Create a bitmap image for drawing using the portrait image JPEG buffer. */
-            Bitmap bitmap = BitmapFactory.decodeByteArray(
-                    jpegPortraitImageBuffer,
-                    0,
-                    jpegPortraitImageBuffer.length
-            );
-            enrolledFaceView.setImageBitmap(bitmap);
+            /* Display the portrait image, rendered directly into a bitmap. */
+            showPortrait(portraitBitmap);
 
             /* Check if quality is high enough for matching and print feedback. */
             if (quality >= Parameters.encodingQualityThreshold) {
-                qualityEnrolledTextView.setText(getResources().getString(R.string.quality_text_view_value, quality));
+                qualityEnrolledTextView.setText(label + "\n" + getResources().getString(R.string.quality_text_view_value, quality));
             } else {
-                qualityEnrolledTextView.setText(getResources().getString(R.string.quality_text_view_warning, quality));
+                qualityEnrolledTextView.setText(label + "\n" + getResources().getString(R.string.quality_text_view_warning, quality));
             }
-
-            /* Enable match button when a template is enrolled. */
-            isTemplateEnrolled = true;
-            matchButton.setEnabled(true);
         });
     }
 
-    public void onLargestFaceVerified(FaceProcessor.VerifyLargestFaceResult verifyLargestFaceResult) {
+    public void onLargestFaceIdentified(FaceProcessor.IdentifyLargestFaceResult identifyLargestFaceResult) {
         runOnUiThread(() -> {
-            int quality = verifyLargestFaceResult.getQuality();
-            int score = verifyLargestFaceResult.getScore();
+            int quality = identifyLargestFaceResult.getQuality();
+            int score = identifyLargestFaceResult.getScore();
+            String label = identifyLargestFaceResult.getLabel();
 
             /* Check if quality is high enough for matching and print feedback. */
             if (quality >= Parameters.encodingQualityThreshold) {
@@ -101,7 +118,7 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
             /* Check if score is above or below match threshold and print feedback. */
             String txt;
             if (score >= Parameters.fmrThreshold.getValue()) {
-                txt = "Score: " + score + "\nDecision @" + Parameters.fmrThreshold + ": MATCH";
+                txt = "Score: " + score + " (" + label + ")\nDecision @" + Parameters.fmrThreshold + ": MATCH";
             } else {
                 txt = "Score: " + score + "\nDecision @" + Parameters.fmrThreshold + ": NO MATCH";
             }
@@ -146,7 +163,7 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
 
             if (isCapturing) {
                 /* Reset enrolment and match information */
-                enrolledFaceView.setImageResource(R.drawable.empty_avatar);
+                showPortrait(null);
                 qualityEnrolledTextView.setText(
                         getResources().getString(R.string.quality_text_view_placeholder));
                 qualityMatchTextView.setText(
@@ -159,7 +176,6 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
                         getResources().getString(R.string.start_capture_button_label));
 
                 isCapturing = false;
-                isTemplateEnrolled = false;
                 captureFragment.stopCapture();
             } else {
                 /* Reset the button text before starting the capture. */
@@ -170,7 +186,7 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
                 isCapturing = true;
             }
             enrollButton.setEnabled(isCapturing);
-            matchButton.setEnabled(isCapturing && isTemplateEnrolled);
+            matchButton.setEnabled(isCapturing);
         });
 
         /* Set enroll button on click listener. */
@@ -182,7 +198,7 @@ public class MainActivity extends AppCompatActivity implements FaceProcessorList
 
         /* Set match button on click listener. */
         matchButton.setOnClickListener(v -> {
-            captureFragment.requestTemplateVerification();
+            captureFragment.requestTemplateIdentification();
         });
         matchButton.setEnabled(isCapturing);
     }
@@ -0,0 +1,237 @@
+package eu.id3.face.samples.recognitionjava;
+
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.id3.face.FaceMatcher;
+import eu.id3.face.FaceTemplate;
+
+/**
+ * Compares face templates with a fixed pool of FaceMatcher objects.
+ *
+ * The matchers are created once, with the service, and kept until it is closed instead of
+ * being created for each comparison. A batch of references is split into one range per
+ * matcher and the ranges are compared concurrently, each one with its own matcher.
+ *
+ * The number of calls and of comparisons are logged every few seconds of use and available
+ * through getters.
+ */
+public class MatchingService implements AutoCloseable {
+    private final static String LOG_TAG = "MatchingService";
+    private final static long LOG_PERIOD_NANOS = 5_000_000_000L;
+
+    /**
+     * Best reference found by search().
+     */
+    public static class SearchResult {
+        private final int index;
+        private final int score;
+        private final int comparisonCount;
+
+        SearchResult(int index, int score, int comparisonCount) {
+            this.index = index;
+            this.score = score;
+            this.comparisonCount = comparisonCount;
+        }
+
+        /**
+         * Position of the best reference found, or -1 if there was no reference.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Best matching score found, between 0 and 65535.
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Number of references compared before the search ended.
+         */
+        public int getComparisonCount() {
+            return comparisonCount;
+        }
+    }
+
+    private final FaceMatcher[] matchers;
+    private final ExecutorService executor;
+    private final Object lock = new Object();
+
+    private volatile long callCount = 0;
+    private volatile long comparisonCount = 0;
+    private long lastLogNanos = 0;
+
+    public MatchingService(int matcherCount) {
+        if (matcherCount <= 0) {
+            throw new IllegalArgumentException("Matcher count must be positive.");
+        }
+        matchers = new FaceMatcher[matcherCount];
+        for (int i = 0; i < matcherCount; i++) {
+            matchers[i] = new FaceMatcher();
+        }
+        AtomicInteger workerIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(matcherCount, runnable -> {
+            Thread thread = new Thread(runnable, "Matching " + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Compares a probe to a single reference, on the calling thread.
+     */
+    public int compare(FaceTemplate probe, FaceTemplate reference) {
+        synchronized (lock) {
+            int score = matchers[0].compareTemplates(probe, reference);
+            updateStatistics(1);
+            return score;
+        }
+    }
+
+    /**
+     * Compares a probe to the first count references and writes the scores to scores, in
+     * the order of the references.
+     */
+    public void compare(FaceTemplate probe, FaceTemplate[] references, int count, int[] scores) {
+        synchronized (lock) {
+            runRanges(count, (matcher, begin, end) -> {
+                for (int i = begin; i < end; i++) {
+                    scores[i] = matcher.compareTemplates(probe, references[i]);
+                }
+                return end - begin;
+            });
+            updateStatistics(count);
+        }
+    }
+
+    /**
+     * Returns the reference of the first count ones with the best score, or the first one
+     * found reaching stopScore, in which case the other references may not have been
+     * compared.
+     */
+    public SearchResult search(FaceTemplate probe, FaceTemplate[] references, int count,
+                               int stopScore) {
+        if (count == 0) {
+            return new SearchResult(-1, 0, 0);
+        }
+        synchronized (lock) {
+            AtomicBoolean stopped = new AtomicBoolean(false);
+            int rangeCount = Math.min(matchers.length, count);
+            int[] bestIndexes = new int[rangeCount];
+            int[] bestScores = new int[rangeCount];
+            AtomicInteger rangeIndex = new AtomicInteger();
+            int compared = runRanges(count, (matcher, begin, end) -> {
+                int range = rangeIndex.getAndIncrement();
+                int bestIndex = begin;
+                int bestScore = -1;
+                int i = begin;
+                while (i < end && !stopped.get()) {
+                    int score = matcher.compareTemplates(probe, references[i]);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestIndex = i;
+                    }
+                    i++;
+                    if (score >= stopScore) {
+                        stopped.set(true);
+                    }
+                }
+                bestIndexes[range] = bestIndex;
+                bestScores[range] = bestScore;
+                return i - begin;
+            });
+            updateStatistics(compared);
+
+            int best = 0;
+            for (int i = 1; i < rangeCount; i++) {
+                if (bestScores[i] > bestScores[best]) {
+                    best = i;
+                }
+            }
+            return new SearchResult(bestIndexes[best], bestScores[best], compared);
+        }
+    }
+
+    private interface RangeTask {
+        /**
+         * Compares the references from begin to end, returns the number of comparisons done.
+         */
+        int run(FaceMatcher matcher, int begin, int end);
+    }
+
+    /**
+     * Splits count references into one range per matcher, runs the ranges concurrently and
+     * returns the total number of comparisons.
+     */
+    private int runRanges(int count, RangeTask task) {
+        int rangeCount = Math.min(matchers.length, count);
+        if (rangeCount <= 1) {
+            return count == 0 ? 0 : task.run(matchers[0], 0, count);
+        }
+        @SuppressWarnings("unchecked")
+        Future<Integer>[] futures = new Future[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            final FaceMatcher matcher = matchers[i];
+            final int begin = (int) ((long) count * i / rangeCount);
+            final int end = (int) ((long) count * (i + 1) / rangeCount);
+            futures[i] = executor.submit(() -> task.run(matcher, begin, end));
+        }
+        int compared = 0;
+        try {
+            for (Future<Integer> future : futures) {
+                compared += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Matching interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return compared;
+    }
+
+    private void updateStatistics(int comparisons) {
+        callCount++;
+        comparisonCount += comparisons;
+        long now = System.nanoTime();
+        if (now - lastLogNanos > LOG_PERIOD_NANOS) {
+            lastLogNanos = now;
+            Log.v(LOG_TAG, String.format(Locale.ROOT,
+                    "%d calls, %d comparisons", callCount, comparisonCount));
+        }
+    }
+
+    public long getCallCount() {
+        return callCount;
+    }
+
+    public long getComparisonCount() {
+        return comparisonCount;
+    }
+
+    /**
+     * Stops the workers and releases the matchers.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        synchronized (lock) {
+            for (FaceMatcher matcher : matchers) {
+                matcher.close();
+            }
+        }
+    }
+}
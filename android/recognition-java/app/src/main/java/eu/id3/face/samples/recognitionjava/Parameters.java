@@ -10,6 +10,25 @@ public class Parameters {
     public final static int encoderThreadCount = 4;
     public final static int encodingQualityThreshold = 40;
     public final static int maxProcessingImageSize = 512;
+    public final static int minInterOcularDistance = 40;
+    public final static float minInterOcularDistanceRatio = 0.11f;
+    public final static boolean roiDetection = true;
+    public final static int roiFullScanPeriod = 10;
+    public final static float roiMarginRatio = 0.5f;
+    public final static int roiDetectionScoreThreshold = 80;
     public final static FaceMatcherThreshold fmrThreshold = FaceMatcherThreshold.FMR10000;
     public final static int cameraType = CameraCharacteristics.LENS_FACING_FRONT;
+    public final static int modelLoadingThreadCount = 3;
+    public final static boolean preloadFeatureModels = true;
+    public final static long modelMemoryBudget = 100L * 1024 * 1024;
+    public final static boolean frameTraceEnabled = false;
+    public final static int frameTraceCapacity = 4096;
+    public final static int thumbnailWidth = 240;
+    public final static int thumbnailHeight = 320;
+    public final static long bestShotWindowMs = 1000;
+    public final static int bestShotCandidateCount = 3;
+    public final static float bestShotMarginRatio = 0.5f;
+    public final static float bestShotSharpnessScale = 100.0f;
+    public final static String watchlistFileName = "watchlist.bin";
+    public final static int identificationThreadCount = 4;
 }
@@ -0,0 +1,162 @@
+package eu.id3.face.samples.recognitionjava;
+
+import eu.id3.face.DetectedFace;
+import eu.id3.face.DetectedFaceList;
+import eu.id3.face.FaceDetector;
+import eu.id3.face.Point;
+import eu.id3.face.PointList;
+import eu.id3.face.Rectangle;
+
+/**
+ * Detects the largest face of consecutive frames of a video stream, searching only around
+ * the face found in the previous frame.
+ *
+ * In live capture the face barely moves from one frame to the next. After a confident
+ * detection, the next frame is only searched in the region around the last face bounds,
+ * expanded by Parameters.roiMarginRatio, which is much cheaper than searching the whole
+ * frame. The whole frame is scanned again every Parameters.roiFullScanPeriod frames, so
+ * that a larger face entering the scene is found, and as soon as the face is lost.
+ * Frames must be submitted in order from a single thread.
+ */
+public class TemporalFaceDetector {
+    private final FaceDetector faceDetector;
+
+    /* Bounds of the last confident detection, valid if hasRegion is true. */
+    private boolean hasRegion = false;
+    private int lastLeft = 0;
+    private int lastTop = 0;
+    private int lastRight = 0;
+    private int lastBottom = 0;
+    private int framesSinceFullScan = 0;
+    private long fullScanCount = 0;
+    private long regionScanCount = 0;
+
+    public TemporalFaceDetector(FaceDetector faceDetector) {
+        this.faceDetector = faceDetector;
+    }
+
+    /**
+     * Returns the largest face of the frame, in frame coordinates, or null if there is none.
+     */
+    public DetectedFace detectLargestFace(eu.id3.face.Image image) {
+        DetectedFace detectedFace = null;
+        if (hasRegion && framesSinceFullScan < Parameters.roiFullScanPeriod) {
+            detectedFace = detectInRegion(image);
+        }
+        if (detectedFace == null) {
+            detectedFace = detectInFrame(image);
+            framesSinceFullScan = 0;
+        }
+        framesSinceFullScan++;
+
+        if (detectedFace != null
+                && detectedFace.getDetectionScore() >= Parameters.roiDetectionScoreThreshold) {
+            try (Rectangle bounds = detectedFace.getBounds()) {
+                lastLeft = bounds.getTopLeft().x;
+                lastTop = bounds.getTopLeft().y;
+                lastRight = bounds.getBottomRight().x;
+                lastBottom = bounds.getBottomRight().y;
+            }
+            hasRegion = true;
+        } else {
+            hasRegion = false;
+        }
+        return detectedFace;
+    }
+
+    /**
+     * Forgets the last face, the next frame is fully scanned.
+     */
+    public void reset() {
+        hasRegion = false;
+    }
+
+    private DetectedFace detectInFrame(eu.id3.face.Image image) {
+        fullScanCount++;
+        long begin = FrameTrace.begin();
+        try (DetectedFaceList detectedFaceList = faceDetector.detectFaces(image)) {
+            if (detectedFaceList.getCount() > 0) {
+                return detectedFaceList.getLargestFace();
+            }
+            return null;
+        } finally {
+            FrameTrace.end("detectFaces", begin);
+        }
+    }
+
+    /**
+     * Searches the expanded region around the last face. Returns null if the face is lost.
+     */
+    private DetectedFace detectInRegion(eu.id3.face.Image image) {
+        int margin = (int) (Math.max(lastRight - lastLeft, lastBottom - lastTop)
+                * Parameters.roiMarginRatio);
+        int left = Math.max(0, lastLeft - margin);
+        int top = Math.max(0, lastTop - margin);
+        int right = Math.min(image.getWidth(), lastRight + margin);
+        int bottom = Math.min(image.getHeight(), lastBottom + margin);
+        if (right - left < 2 || bottom - top < 2) {
+            return null;
+        }
+        regionScanCount++;
+
+        long begin = FrameTrace.begin();
+        try (Rectangle region = createRectangle(left, top, right, bottom);
+             eu.id3.face.Image regionImage = image.extractRoi(region);
+             DetectedFaceList detectedFaceList = faceDetector.detectFaces(regionImage)) {
+            if (detectedFaceList.getCount() == 0) {
+                return null;
+            }
+            DetectedFace detectedFace = detectedFaceList.getLargestFace();
+            translate(detectedFace, left, top);
+            return detectedFace;
+        } finally {
+            FrameTrace.end("detectFacesInRegion", begin);
+        }
+    }
+
+    /**
+     * Moves the bounds and landmarks of a face found in the region to frame coordinates.
+     */
+    static void translate(DetectedFace detectedFace, int dx, int dy) {
+        try (Rectangle bounds = detectedFace.getBounds()) {
+            bounds.setTopLeft(translate(bounds.getTopLeft(), dx, dy));
+            bounds.setTopRight(translate(bounds.getTopRight(), dx, dy));
+            bounds.setBottomRight(translate(bounds.getBottomRight(), dx, dy));
+            bounds.setBottomLeft(translate(bounds.getBottomLeft(), dx, dy));
+            detectedFace.setBounds(bounds);
+        }
+        try (PointList landmarks = detectedFace.getLandmarks()) {
+            for (int i = 0; i < landmarks.getCount(); i++) {
+                landmarks.set(i, translate(landmarks.get(i), dx, dy));
+            }
+            detectedFace.setLandmarks(landmarks);
+        }
+    }
+
+    private static Point translate(Point point, int dx, int dy) {
+        return new Point(point.x + dx, point.y + dy);
+    }
+
+    static Rectangle createRectangle(int left, int top, int right, int bottom) {
+        Rectangle rectangle = new Rectangle();
+        rectangle.setTopLeft(new Point(left, top));
+        rectangle.setTopRight(new Point(right, top));
+        rectangle.setBottomRight(new Point(right, bottom));
+        rectangle.setBottomLeft(new Point(left, bottom));
+        return rectangle;
+    }
+
+    /**
+     * Number of frames scanned entirely.
+     */
+    public long getFullScanCount() {
+        return fullScanCount;
+    }
+
+    /**
+     * Number of frames searched around the last face only.
+     */
+    public long getRegionScanCount() {
+        return regionScanCount;
+    }
+}
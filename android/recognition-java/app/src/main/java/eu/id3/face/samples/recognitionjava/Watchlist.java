@@ -0,0 +1,245 @@
+package eu.id3.face.samples.recognitionjava;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import eu.id3.face.FaceTemplate;
+
+/**
+ * On-device gallery of enrolled face templates, each one with an identity label, searched
+ * 1:N by identify().
+ *
+ * The watchlist is persisted in a single file of the application storage, in which each
+ * enrolment appends a record: the length and the UTF-8 bytes of the label, then the length
+ * and the bytes of FaceTemplate.toBuffer(). Enrolling never rewrites the file nor rebuilds
+ * the templates in memory, which are only appended to an array growing by doubling.
+ *
+ * identify() compares the watchlist concurrently with the matchers of a MatchingService. The
+ * search stops as soon as a score reaches the match threshold, since the decision is then
+ * known.
+ */
+public class Watchlist implements AutoCloseable {
+    private final static String LOG_TAG = "Watchlist";
+    private final static int MAGIC = 0x57334449; // "ID3W"
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 8;
+
+    /**
+     * Result of a 1:N search.
+     */
+    public static class Match {
+        private final int index;
+        private final String label;
+        private final int score;
+        private final int comparisonCount;
+
+        Match(int index, String label, int score, int comparisonCount) {
+            this.index = index;
+            this.label = label;
+            this.score = score;
+            this.comparisonCount = comparisonCount;
+        }
+
+        /**
+         * Position of the best template found, or -1 if the watchlist is empty.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Label of the best template found, or null if the watchlist is empty.
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Best matching score found, between 0 and 65535.
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Number of templates compared before the search ended.
+         */
+        public int getComparisonCount() {
+            return comparisonCount;
+        }
+    }
+
+    private final File file;
+    private final MatchingService matchingService;
+
+    /*
+     * Appended under the watchlist lock. The arrays are published before the count, so a
+     * search reading the count first always finds as many entries in the arrays.
+     */
+    private volatile FaceTemplate[] templates = new FaceTemplate[64];
+    private volatile String[] labels = new String[64];
+    private volatile int count = 0;
+
+    private Watchlist(File file, MatchingService matchingService) {
+        this.file = file;
+        this.matchingService = matchingService;
+    }
+
+    /**
+     * Loads the watchlist saved in file, or creates an empty one if the file does not exist.
+     * A record truncated by an interrupted enrolment, or whose lengths do not fit in the
+     * rest of the file, is dropped from the file with everything after it.
+     */
+    public static Watchlist open(File file, MatchingService matchingService) throws IOException {
+        Watchlist watchlist = new Watchlist(file, matchingService);
+        try {
+            watchlist.load();
+        } catch (IOException e) {
+            watchlist.close();
+            throw e;
+        }
+        return watchlist;
+    }
+
+    private void load() throws IOException {
+        if (!file.exists() || file.length() == 0) {
+            try (DataOutputStream output = new DataOutputStream(new FileOutputStream(file))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+            }
+            return;
+        }
+
+        long fileLength = file.length();
+        long validLength = HEADER_SIZE;
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Unsupported watchlist file: " + file.getPath());
+            }
+            while (true) {
+                byte[] labelBytes;
+                byte[] templateBuffer;
+                try {
+                    /* A length that does not fit in the rest of the file is a torn record. */
+                    long remaining = fileLength - validLength - 4;
+                    labelBytes = new byte[readLength(input, remaining)];
+                    input.readFully(labelBytes);
+                    remaining -= labelBytes.length + 4;
+                    templateBuffer = new byte[readLength(input, remaining)];
+                    input.readFully(templateBuffer);
+                } catch (EOFException e) {
+                    break;
+                }
+                append(new String(labelBytes, StandardCharsets.UTF_8),
+                        FaceTemplate.fromBuffer(templateBuffer));
+                validLength += 8 + labelBytes.length + templateBuffer.length;
+            }
+        }
+        if (validLength < fileLength) {
+            Log.w(LOG_TAG, "Dropping a truncated record at the end of " + file.getPath());
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(validLength);
+            }
+        }
+        Log.v(LOG_TAG, "Loaded " + count + " templates");
+    }
+
+    /**
+     * Reads a record length, which must fit in the remaining bytes of the file. An invalid
+     * length is reported as the end of the file.
+     */
+    private static int readLength(DataInputStream input, long remaining) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > remaining) {
+            throw new EOFException("Invalid record length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Enrolls a template: it is appended to the file, then searchable. The watchlist takes
+     * ownership of the template and closes it with the watchlist. If the template cannot be
+     * saved, the part of the record already written is removed from the file, and the
+     * template is not enrolled and stays owned by the caller.
+     */
+    public synchronized int add(String label, FaceTemplate template) throws IOException {
+        byte[] labelBytes = label.getBytes(StandardCharsets.UTF_8);
+        byte[] templateBuffer = template.toBuffer();
+        long previousLength = file.length();
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            output.writeInt(labelBytes.length);
+            output.write(labelBytes);
+            output.writeInt(templateBuffer.length);
+            output.write(templateBuffer);
+        } catch (IOException e) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(previousLength);
+            } catch (IOException truncateException) {
+                Log.e(LOG_TAG, "Cannot remove a partial record from " + file.getPath() + ": "
+                        + truncateException.getMessage());
+            }
+            throw e;
+        }
+        return append(label, template);
+    }
+
+    private synchronized int append(String label, FaceTemplate template) {
+        int index = count;
+        if (index == templates.length) {
+            labels = Arrays.copyOf(labels, 2 * index);
+            templates = Arrays.copyOf(templates, 2 * index);
+        }
+        labels[index] = label;
+        templates[index] = template;
+        count = index + 1;
+        return index;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the template with the best score, or the first one found reaching
+     * matchThreshold, in which case the other templates may not have been compared.
+     */
+    public Match identify(FaceTemplate probe, int matchThreshold) {
+        int size = count;
+        FaceTemplate[] snapshot = templates;
+        String[] labelSnapshot = labels;
+        if (size == 0) {
+            return new Match(-1, null, 0, 0);
+        }
+
+        MatchingService.SearchResult result = matchingService.search(probe, snapshot, size,
+                matchThreshold);
+        return new Match(result.getIndex(), labelSnapshot[result.getIndex()], result.getScore(),
+                result.getComparisonCount());
+    }
+
+    /**
+     * Releases the templates. The matching service is not closed.
+     */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < count; i++) {
+            templates[i].close();
+            templates[i] = null;
+        }
+        count = 0;
+    }
+}
@@ -35,13 +35,14 @@ import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
-import eu.id3.face.PixelFormat;
 import eu.id3.face.TrackedFaceList;
 
 public class CameraFragment extends Fragment {
@@ -106,6 +107,8 @@ public class CameraFragment extends Fragment {
     private int displayOrientation = 0;
     private boolean isCapturing = false;
     private FaceProcessor faceProcessor = null;
+    private final FrameIngest frameIngest = new FrameIngest();
+    private final FrameScheduler frameScheduler = new FrameScheduler(this::processFrame);
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -188,6 +191,7 @@ public class CameraFragment extends Fragment {
         super.onResume();
         Log.v(LOG_TAG, "onResume");
         startBackgroundThread();
+        frameScheduler.start();
         if (cameraPreview.isAvailable()) {
             openCamera(cameraPreview.getWidth(), cameraPreview.getHeight());
         } else {
@@ -201,11 +205,35 @@ public class CameraFragment extends Fragment {
     @Override
     public void onPause() {
         Log.v(LOG_TAG, "onPause");
+        /* Finish the frame being processed before closing the image reader. */
+        frameScheduler.stop();
         closeCamera();
         stopBackgroundThread();
+        if (Parameters.frameTraceEnabled) {
+            writeFrameTrace();
+        }
         super.onPause();
     }
 
+    /**
+     * Saves the timing of the last processing stages, see FrameTrace. The trace can be
+     * retrieved with 'adb pull /sdcard/Android/data/<package>/files/frame_trace.json'.
+     */
+    private void writeFrameTrace() {
+        File directory = requireContext().getExternalFilesDir(null);
+        if (directory == null) {
+            directory = requireContext().getFilesDir();
+        }
+        File file = new File(directory, "frame_trace.json");
+        new Thread(() -> {
+            try {
+                FrameTrace.writeChromeTrace(file);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error while writing the frame trace: " + e.getMessage());
+            }
+        }, "Frame Trace").start();
+    }
+
     /**
      * Creates the camera preview.
      */
@@ -336,10 +364,17 @@ public class CameraFragment extends Fragment {
 
             imageDimension = previewSize;
 
-            /* Create the image reader object that will analyze the camera output. */
+            /*
+             * Create the image reader object that will analyze the camera output. Its size is
+             * chosen for the processing, independently of the preview size.
+             */
+            Size processingSize = chooseProcessingSize(
+                    map.getOutputSizes(ImageFormat.YUV_420_888), previewSize
+            );
+            Log.v(LOG_TAG, "Preview size: " + previewSize + ", processing size: " + processingSize);
             imageReader = ImageReader.newInstance(
-                    previewSize.getWidth(), previewSize.getHeight(),
-                    ImageFormat.YUV_420_888, 10
+                    processingSize.getWidth(), processingSize.getHeight(),
+                    ImageFormat.YUV_420_888, FrameScheduler.MAX_IMAGES
             );
             imageReader.setOnImageAvailableListener(onImageAvailableListener, backgroundHandler);
 
@@ -401,7 +436,8 @@ public class CameraFragment extends Fragment {
     }
 
     /**
-     * Processes the image once it is available from the camera reader.
+     * Hands the image to the frame scheduler once it is available from the camera reader.
+     * An image arriving while another one waits for processing replaces it.
      */
     private final ImageReader.OnImageAvailableListener onImageAvailableListener
             = new ImageReader.OnImageAvailableListener() {
@@ -413,60 +449,44 @@ public class CameraFragment extends Fragment {
             if (image == null)
                 return;
 
-            if (isCapturing) {
-                /* Convert the image from input format to BGR for id3 Face SDK processing functions. */
-                /* Get the YUV planes of the image. */
-                android.media.Image.Plane[] planes = image.getPlanes();
-                int w = image.getWidth();
-                int h = image.getHeight();
-                int uvPixelStride = planes[1].getPixelStride();
-                int uvRowStride = planes[1].getRowStride();
-                byte[] plane0 = new byte[planes[0].getBuffer().remaining()];
-                planes[0].getBuffer().get(plane0);
-                byte[] plane1 = new byte[planes[1].getBuffer().remaining()];
-                planes[1].getBuffer().get(plane1);
-                byte[] plane2 = new byte[planes[2].getBuffer().remaining()];
-                planes[2].getBuffer().get(plane2);
-
-                /* Convert this image to an id3.face Image. */
-                eu.id3.face.Image processingImage = eu.id3.face.Image.fromYuvPlanes(
-                        plane0,
-                        plane1,
-                        plane2,
-                        w,
-                        h,
-                        uvPixelStride,
-                        uvRowStride,
-                        PixelFormat.BGR_24_BITS
-                );
+            frameScheduler.submit(image);
+        }
+    };
 
-                /* Rotate image if necessary. */
-                int rotationDegrees = displayOrientation - sensorOrientation;
-                if (rotationDegrees < 0) {
-                    rotationDegrees += 360;
-                }
-                processingImage.rotate(rotationDegrees);
-
-                /*
-                 * Resize image if larger or higher than 'maxProcessingImageSize'.
-                 * This operation allows to speed up the face detection process.
-                 */
-                processingImage.downscale(Parameters.maxProcessingImageSize);
-
-                /* Track faces and update bounds. */
-                TrackedFaceList trackedFaceList = faceProcessor.trackFaces(processingImage);
-                if (trackedFaceList != null) {
-                    multipleBoundsView.update(trackedFaceList, processingImage.getWidth(), processingImage.getHeight());
-                } else {
-                    multipleBoundsView.update(null, 0, 0);
-                }
-                processingImage.close();
+    /**
+     * Processes the freshest camera image on the frame processing thread.
+     * The image is closed by the frame scheduler, as well as the SDK objects registered in
+     * frameResources.
+     */
+    private void processFrame(Image image, FrameResources frameResources) {
+        /* The preview runs while the models are loading, frames are processed once they are ready. */
+        if (isCapturing && faceProcessor.isReady()) {
+            /* Rotate image if necessary. */
+            int rotationDegrees = displayOrientation - sensorOrientation;
+            if (rotationDegrees < 0) {
+                rotationDegrees += 360;
+            }
+
+            /*
+             * Convert the image from input format to BGR for id3 Face SDK processing functions.
+             * The image is rotated and resized if larger or higher than 'maxProcessingImageSize'
+             * while it is read, so only the pixels of the processing image are converted.
+             * This operation allows to speed up the face detection process.
+             */
+            eu.id3.face.Image processingImage = frameResources.track(frameIngest.toProcessingImage(
+                    image, rotationDegrees, Parameters.maxProcessingImageSize));
+
+            /* Track faces and update bounds. */
+            TrackedFaceList trackedFaceList = faceProcessor.trackFaces(processingImage);
+            if (trackedFaceList != null) {
+                multipleBoundsView.update(trackedFaceList, processingImage.getWidth(), processingImage.getHeight());
             } else {
                 multipleBoundsView.update(null, 0, 0);
             }
-            image.close();
+        } else {
+            multipleBoundsView.update(null, 0, 0);
         }
-    };
+    }
 
     /**
      * Chooses the optimal size for the camera preview.
@@ -504,6 +524,57 @@ public class CameraFragment extends Fragment {
         }
     }
 
+    /**
+     * Chooses the size of the camera stream analyzed by the face processor.
+     *
+     * The frames are downscaled to 'maxProcessingImageSize' before the detection, so a larger
+     * stream only costs bandwidth, memory and conversion time without giving the face
+     * processor more pixels. The smallest size with the aspect ratio of the preview whose
+     * largest side reaches 'maxProcessingImageSize' is chosen. The inter-ocular constraint is
+     * checked on the processing image: when a face whose eyes are
+     * 'minInterOcularDistanceRatio' of its shortest side apart gets less than
+     * 'minInterOcularDistance' pixels between the eyes, a warning is logged, since only a
+     * larger 'maxProcessingImageSize' would help.
+     */
+    public Size chooseProcessingSize(Size[] choices, Size previewSize) {
+        int w = previewSize.getWidth();
+        int h = previewSize.getHeight();
+        long previewArea = (long) w * h;
+        List<Size> candidates = new ArrayList<>();
+        for (Size option : choices) {
+            if (option.getHeight() == option.getWidth() * h / w
+                    && Math.max(option.getWidth(), option.getHeight()) >= Parameters.maxProcessingImageSize
+                    && (long) option.getWidth() * option.getHeight() <= previewArea) {
+                candidates.add(option);
+            }
+        }
+        if (candidates.isEmpty()) {
+            Log.w(LOG_TAG, "No processing size reaches " + Parameters.maxProcessingImageSize
+                    + " pixels, using the preview size");
+            return previewSize;
+        }
+
+        Size best = Collections.min(candidates, new CompareSizesByArea());
+        float interOcularDistance = getAnalyzedShortSide(best, Parameters.maxProcessingImageSize)
+                * Parameters.minInterOcularDistanceRatio;
+        if (interOcularDistance < Parameters.minInterOcularDistance) {
+            Log.w(LOG_TAG, "A face at " + Parameters.minInterOcularDistanceRatio + " of the frame only has "
+                    + (int) interOcularDistance + " pixels between the eyes in the processing image, "
+                    + Parameters.minInterOcularDistance + " are expected");
+        }
+        return best;
+    }
+
+    /**
+     * Shortest side of a frame of the given size once downscaled so that its largest side
+     * does not exceed analyzedMaxSize, as done by toProcessingImage().
+     */
+    private static float getAnalyzedShortSide(Size size, int analyzedMaxSize) {
+        int longSide = Math.max(size.getWidth(), size.getHeight());
+        int shortSide = Math.min(size.getWidth(), size.getHeight());
+        return shortSide * Math.min(1.0f, (float) analyzedMaxSize / longSide);
+    }
+
     /**
      * Internal class that implements a comparator for Size objects, by comparing their area.
      */
@@ -4,101 +4,165 @@ import android.content.Context;
 import android.hardware.camera2.CameraCharacteristics;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import eu.id3.face.DetectedFace;
 import eu.id3.face.DetectedFaceList;
 import eu.id3.face.FaceDetector;
 import eu.id3.face.FaceEncoder;
 import eu.id3.face.FaceError;
-import eu.id3.face.FaceException;
-import eu.id3.face.FaceLibrary;
 import eu.id3.face.FaceMatcher;
 import eu.id3.face.FaceTracker;
 import eu.id3.face.FaceModel;
 import eu.id3.face.FaceTemplate;
 import eu.id3.face.ImageFormat;
-import eu.id3.face.ProcessingUnit;
+import eu.id3.face.PixelFormat;
 import eu.id3.face.TrackedFaceList;
 
 public class FaceProcessor {
+    private ModelRegistry modelRegistry = null;
+    private final List<ModelRegistry.Handle> trackerModels = new ArrayList<>();
+
     private FaceTracker faceTracker = null;
     private TrackedFaceList trackedFaceList = null;
 
+    private final ExecutorService warmUpExecutor =
+            Executors.newFixedThreadPool(Parameters.modelLoadingThreadCount);
+    private Future<Void> readyFuture = null;
+
     public FaceProcessor(Context context) {
         String LOG_TAG = "FaceProcessor";
+        modelRegistry = new ModelRegistry(context, Parameters.modelMemoryBudget)
+                .register(FaceModel.FACE_DETECTOR_4B, "models/face_detector_v4b.id3nn")
+                .register(FaceModel.FACE_ENCODER_10B, "models/face_encoder_v10b.id3nn");
+
+        /*
+         * Load the models in the background so that the camera preview starts right away.
+         * Both models are used on every frame and are loaded in parallel.
+         */
+        Future<List<ModelRegistry.Handle>> models = modelRegistry.preload(warmUpExecutor,
+                FaceModel.FACE_DETECTOR_4B,
+                FaceModel.FACE_ENCODER_10B);
+        readyFuture = warmUpExecutor.submit(() -> {
+            try {
+                /*
+                 * Load and initialize a face tracker.
+                 *
+                 * A FaceTracker object needs two main models to be initialized:
+                 * - a face detector model (Default is FACE_DETECTOR_3B but can be adjusted according to
+                 * application needs)
+                 * - a face encoder model (Default is FACE_ENCODER_4B but can be adjusted according to
+                 * application needs)
+                 * First load the models from the Assets and then initialize the FaceTracker object.
+                 * Only one Facetracker object is needed to perform all of your tracking operation.
+                 */
+                trackerModels.addAll(models.get());
+                Log.v(LOG_TAG, "Load models: OK !");
+
+                faceTracker = new FaceTracker();
+
+                // Set the face detector and encoder models
+                faceTracker.setDetectionModel(FaceModel.FACE_DETECTOR_4B);
+                faceTracker.setEncodingModel(FaceModel.FACE_ENCODER_10B);
+
+                // The FaceTracker object has multiple parameters which must be tuned in order to respect
+                // your application needs.
+
+                // For example in this sample we raise the internal matching threshold of the tracker to ensure
+                // the consistency of the tracked face IDs
+                faceTracker.setMatchThreshold(4000);
+
+                trackedFaceList = new TrackedFaceList();
+
+                /* Run a first tracking to prime the native kernels. */
+                try (eu.id3.face.Image warmUpImage = createWarmUpImage()) {
+                    faceTracker.trackFaces(warmUpImage, trackedFaceList);
+                }
+                trackedFaceList.clear();
+                Log.v(LOG_TAG, "Load : OK !");
+                return null;
+            } catch (Exception e) {
+                e.printStackTrace();
+                Log.e(LOG_TAG, "Error while loading models: " + e.getMessage());
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Completes when the models needed to process a frame are loaded and primed.
+     */
+    public Future<Void> getReadyFuture() {
+        return readyFuture;
+    }
+
+    /**
+     * Returns true once frames can be processed.
+     */
+    public boolean isReady() {
+        if (!readyFuture.isDone()) {
+            return false;
+        }
         try {
-            /*
-             * Load and initialize a face tracker.
-             *
-             * A FaceTracker object needs two main models to be initialized:
-             * - a face detector model (Default is FACE_DETECTOR_3B but can be adjusted according to
-             * application needs)
-             * - a face encoder model (Default is FACE_ENCODER_4B but can be adjusted according to
-             * application needs)
-             * First load the model from the Assets and then initialize the FaceTracker object.
-             * Only one Facetracker object is needed to perform all of your tracking operation.
-             */
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_detector_v4b.id3nn")),
-                    FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU
-            );
-
-            FaceLibrary.loadModelBuffer(
-                    readAllBytes(context.getAssets().open("models/face_encoder_v10b.id3nn")),
-                    FaceModel.FACE_ENCODER_10B, ProcessingUnit.CPU
-            );
-            Log.v(LOG_TAG, "Load models: OK !");
-
-            faceTracker = new FaceTracker();
-
-            // Set the face detector and encoder models
-            faceTracker.setDetectionModel(FaceModel.FACE_DETECTOR_4B);
-            faceTracker.setEncodingModel(FaceModel.FACE_ENCODER_10B);
-
-            // The FaceTracker object has multiple parameters which must be tuned in order to respect
-            // your application needs.
-
-            // For example in this sample we raise the internal matching threshold of the tracker to ensure
-            // the consistency of the tracked face IDs
-            faceTracker.setMatchThreshold(4000);
-
-            trackedFaceList = new TrackedFaceList();
-            Log.v(LOG_TAG, "Load : OK !");
-        } catch (FaceException | IOException e) {
-            e.printStackTrace();
-            Log.e(LOG_TAG, "Error while loading models: " + e.getMessage());
+            readyFuture.get();
+            return true;
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            return false;
         }
     }
 
-    public static byte[] readAllBytes(InputStream in) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        copyAllBytes(in, out);
-        return out.toByteArray();
+    /**
+     * Creates a grey image of the processing size used to prime the processors.
+     */
+    private static eu.id3.face.Image createWarmUpImage() {
+        int size = Parameters.maxProcessingImageSize;
+        byte[] yPlane = new byte[size * size];
+        byte[] uvPlane = new byte[size * size / 4];
+        Arrays.fill(yPlane, (byte) 128);
+        Arrays.fill(uvPlane, (byte) 128);
+        return eu.id3.face.Image.fromYuvPlanes(yPlane, uvPlane, uvPlane, size, size, 1, size / 2,
+                PixelFormat.BGR_24_BITS);
     }
 
     /**
-     * Copies all available data from in to out without closing any stream.
+     * Releases the tracker and unloads the models.
      */
-    public static void copyAllBytes(InputStream in, OutputStream out)
-            throws IOException {
-        byte[] buffer = new byte[4096];
-        while (true) {
-            int read = in.read(buffer);
-            if (read == -1) {
-                break;
-            }
-            out.write(buffer, 0, read);
+    public void close() {
+        /* Wait for the end of the model loading before unloading them. */
+        warmUpExecutor.shutdownNow();
+        try {
+            warmUpExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (trackedFaceList != null) {
+            trackedFaceList.close();
+            trackedFaceList = null;
+        }
+        if (faceTracker != null) {
+            faceTracker.close();
+            faceTracker = null;
+        }
+        if (modelRegistry != null) {
+            modelRegistry.close();
+            modelRegistry = null;
         }
     }
 
     public TrackedFaceList trackFaces(eu.id3.face.Image image) {
         // Usage of the face tracker is similar to a detector usage
         // A TrackedFaceList object is re-used on each frame to hold information on the tracked faces
+        long begin = FrameTrace.begin();
         faceTracker.trackFaces(image,trackedFaceList);
+        FrameTrace.end("trackFaces", begin);
         return trackedFaceList;
     }
 
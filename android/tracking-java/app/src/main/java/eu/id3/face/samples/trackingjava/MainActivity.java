@@ -49,6 +49,13 @@ public class MainActivity extends AppCompatActivity {
         setupViewElements();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        /* Release the processors and unload the models. */
+        faceProcessor.close();
+    }
+
     private void setupViewElements() {
         /* Initialize the capture fragment. */
         captureFragment = (CameraFragment) getSupportFragmentManager().findFragmentById(R.id.cameraFragment);
@@ -0,0 +1,258 @@
+package eu.id3.face.samples.trackingjava;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import eu.id3.face.FaceLibrary;
+import eu.id3.face.FaceModel;
+import eu.id3.face.ProcessingUnit;
+
+/**
+ * Loads models from the Assets on first use and shares them between their users.
+ *
+ * A model is loaded by the first acquire() and stays loaded as long as a handle on it
+ * is open. When its last handle is closed it becomes idle: it remains loaded so that
+ * the next user does not pay for loading it again, unless the memory budget is
+ * exceeded, in which case the least recently used idle models are unloaded first.
+ */
+public class ModelRegistry {
+    private static final String LOG_TAG = "ModelRegistry";
+
+    private final AssetManager assetManager;
+    private final long memoryBudget;
+    private final Map<FaceModel, String> assetPaths = new EnumMap<>(FaceModel.class);
+    private final Map<FaceModel, Entry> entries = new EnumMap<>(FaceModel.class);
+    private final LinkedHashMap<FaceModel, Entry> idleEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes = 0;
+
+    /**
+     * memoryBudget is the total size in bytes of the models that may stay loaded.
+     * Models in use are never unloaded, even above the budget.
+     */
+    public ModelRegistry(Context context, long memoryBudget) {
+        this.assetManager = context.getAssets();
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Declares the asset file of a model. Nothing is loaded until the model is acquired.
+     */
+    public synchronized ModelRegistry register(FaceModel model, String assetPath) {
+        assetPaths.put(model, assetPath);
+        return this;
+    }
+
+    /**
+     * Loads the model if needed and returns a handle keeping it loaded until the handle
+     * is closed.
+     * Different models are loaded concurrently when acquired from several threads. A
+     * thread acquiring a model being loaded by another one waits for the end of the load.
+     */
+    public Handle acquire(FaceModel model) throws IOException {
+        Entry entry;
+        boolean loader = false;
+        synchronized (this) {
+            entry = entries.get(model);
+            if (entry == null) {
+                if (!assetPaths.containsKey(model)) {
+                    throw new IllegalArgumentException("No asset registered for model " + model);
+                }
+                entry = new Entry();
+                entries.put(model, entry);
+                loader = true;
+            } else if (entry.users == 0) {
+                idleEntries.remove(model);
+            }
+            entry.users++;
+        }
+        if (loader) {
+            load(model, entry);
+        } else {
+            waitForLoad(model, entry);
+        }
+        return new Handle(this, model);
+    }
+
+    private void load(FaceModel model, Entry entry) throws IOException {
+        try {
+            byte[] modelBuffer = ModelAssetLoader.load(assetManager, assetPaths.get(model));
+            FaceLibrary.loadModelBuffer(modelBuffer, model, ProcessingUnit.CPU);
+            synchronized (this) {
+                if (entry.removed) {
+                    /*
+                     * Unloaded by close() or an eviction during the load: release the
+                     * model now, unless it was acquired again in the meantime.
+                     */
+                    if (!entries.containsKey(model)) {
+                        FaceLibrary.unloadModel(model, ProcessingUnit.CPU);
+                    }
+                    throw new IOException(model + " was unloaded while being loaded");
+                }
+                entry.size = modelBuffer.length;
+                entry.loaded = true;
+                residentBytes += entry.size;
+                evictIdle(memoryBudget);
+                notifyAll();
+            }
+            Log.v(LOG_TAG, "Loaded " + model + " (" + entry.size / 1024 + " KB)");
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                if (entries.get(model) == entry) {
+                    entries.remove(model);
+                }
+                entry.failure = e;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void waitForLoad(FaceModel model, Entry entry) throws IOException {
+        try {
+            while (!entry.loaded && entry.failure == null) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            /* Give back the use counted by acquire(), as a closed handle would. */
+            release(model, entry);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading " + model);
+        }
+        if (entry.failure != null) {
+            throw new IOException("Error while loading " + model, entry.failure);
+        }
+    }
+
+    /**
+     * Acquires the models in parallel on the executor. The returned future completes
+     * once all of them are loaded and holds their handles.
+     */
+    public Future<List<Handle>> preload(ExecutorService executor, FaceModel... models) {
+        final List<Future<Handle>> loads = new ArrayList<>();
+        for (final FaceModel model : models) {
+            loads.add(executor.submit(() -> acquire(model)));
+        }
+        /*
+         * Submitted after the loads, so with a FIFO executor it can only wait on loads
+         * which are already running.
+         */
+        return executor.submit(() -> {
+            List<Handle> handles = new ArrayList<>();
+            for (Future<Handle> load : loads) {
+                handles.add(load.get());
+            }
+            return handles;
+        });
+    }
+
+    private synchronized void release(FaceModel model) {
+        release(model, entries.get(model));
+    }
+
+    /**
+     * Ends a use of the entry. The entry becomes idle with its last user, unless it was
+     * unloaded in the meantime.
+     */
+    private synchronized void release(FaceModel model, Entry entry) {
+        if (entry == null || entry.users == 0) {
+            return;
+        }
+        entry.users--;
+        if (entry.users == 0 && entries.get(model) == entry) {
+            idleEntries.put(model, entry);
+            evictIdle(memoryBudget);
+        }
+    }
+
+    /**
+     * Unloads idle models, least recently used first, until the resident size fits in
+     * targetBytes.
+     */
+    private void evictIdle(long targetBytes) {
+        Iterator<Map.Entry<FaceModel, Entry>> iterator = idleEntries.entrySet().iterator();
+        while (residentBytes > targetBytes && iterator.hasNext()) {
+            Map.Entry<FaceModel, Entry> idle = iterator.next();
+            iterator.remove();
+            unload(idle.getKey());
+        }
+    }
+
+    private void unload(FaceModel model) {
+        Entry entry = entries.remove(model);
+        entry.removed = true;
+        if (!entry.loaded) {
+            /* Still being loaded: the loader unloads it at the end of the load. */
+            return;
+        }
+        FaceLibrary.unloadModel(model, ProcessingUnit.CPU);
+        residentBytes -= entry.size;
+        Log.v(LOG_TAG, "Unloaded " + model);
+    }
+
+    public synchronized boolean isLoaded(FaceModel model) {
+        return entries.containsKey(model);
+    }
+
+    /**
+     * Total size in bytes of the loaded models.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Unloads every model, whether it is in use or not.
+     */
+    public synchronized void close() {
+        for (FaceModel model : entries.keySet().toArray(new FaceModel[0])) {
+            unload(model);
+        }
+        idleEntries.clear();
+    }
+
+    private static class Entry {
+        long size = 0;
+        boolean loaded = false;
+        boolean removed = false;
+        Exception failure = null;
+        int users = 0;
+    }
+
+    /**
+     * Keeps a model loaded until closed.
+     */
+    public static class Handle implements AutoCloseable {
+        private final ModelRegistry registry;
+        private final FaceModel model;
+        private boolean closed = false;
+
+        private Handle(ModelRegistry registry, FaceModel model) {
+            this.registry = registry;
+            this.model = model;
+        }
+
+        public FaceModel getModel() {
+            return model;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                registry.release(model);
+            }
+        }
+    }
+}
@@ -6,7 +6,6 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
-import android.graphics.Rect;
 import android.hardware.camera2.CameraCharacteristics;
 import android.util.AttributeSet;
 import android.view.View;
@@ -17,17 +16,15 @@ import eu.id3.face.TrackedFaceList;
 import eu.id3.face.TrackingStatus;
 
 public class MultipleBoundsView extends View {
-    private boolean isCapturing = false;
-    private boolean isDrawing = false;
-    private TrackedFaceList trackedFaceList = null;
-    private Rect rect = null;
+    private final static int MAX_FACES = 16;
+
+    private final OverlayState overlayState = new OverlayState(MAX_FACES);
+    private final char[] label = new char[11];
 
     private Paint rectPaint = null;
     private Paint textPaint = null;
     private final int textSize = 70;
 
-    private int processingWidth = 0;
-    private int processingHeight = 0;
     private int ratioWidth = 0;
     private int ratioHeight = 0;
 
@@ -45,52 +42,75 @@ public class MultipleBoundsView extends View {
 
     /**
      * This function is called every time the bounds to draw are modified.
-     * If the capture is ongoing and an object of interest is detected, we draw the detected bounds
-     * in the view. Otherwise, we erase the previous bounds.
+     * If faces are tracked, we draw the last published bounds in the view. Otherwise, we erase
+     * the previous bounds.
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (isCapturing) {
-            for(int i = 0 ; i < trackedFaceList.getCount() ; i++) {
-                TrackedFace tf = trackedFaceList.get(i);
-                if(tf.getTrackingStatus() == TrackingStatus.CONFIRMED) {
-                    eu.id3.face.Rectangle bounds = tf.getPredictedBounds();
-                    rect.set(bounds.getTopLeft().x,
-                            bounds.getTopLeft().y,
-                            bounds.getBottomRight().x,
-                            bounds.getBottomRight().y);
-                    scaleRect(rect);
-                    canvas.drawRect(rect, rectPaint);
-
-                    float textx = rect.exactCenterX();
-                    float texty = rect.exactCenterY() + 0.5f * rect.height() + textSize;
-                    canvas.drawText(String.valueOf(tf.getId()), textx, texty, textPaint);
-                }
-                tf.close();
-            }
-        } else {
+        OverlayState.Snapshot snapshot = overlayState.acquire();
+        if (snapshot.count == 0) {
             canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            return;
+        }
+        for (int i = 0; i < snapshot.count; i++) {
+            canvas.drawRect(snapshot.lefts[i], snapshot.tops[i], snapshot.rights[i],
+                    snapshot.bottoms[i], rectPaint);
+
+            float textx = 0.5f * (snapshot.lefts[i] + snapshot.rights[i]);
+            float texty = snapshot.bottoms[i] + textSize;
+            int start = formatId(snapshot.ids[i]);
+            canvas.drawText(label, start, label.length - start, textx, texty, textPaint);
+        }
+    }
+
+    /**
+     * Writes the decimal digits of a face id at the end of the label, without allocating.
+     * Returns the index of the first digit.
+     */
+    private int formatId(int id) {
+        int index = label.length;
+        long value = Math.abs((long) id);
+        do {
+            label[--index] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        if (id < 0) {
+            label[--index] = '-';
         }
-        isDrawing = false;
+        return index;
     }
 
     /**
      * Updates the bounds this view needs.
+     * The bounds of the confirmed faces are copied and scaled to the view, the list can be
+     * modified as soon as this method returns.
      */
     public void update(TrackedFaceList trackedFaceList, int processingWidth, int processingHeight) {
-        if (!isDrawing) {
-            if (trackedFaceList == null) {
-                isCapturing = false;
-            } else {
-                isCapturing = true;
-                this.processingWidth = processingWidth;
-                this.processingHeight = processingHeight;
+        int viewWidth = getMeasuredWidth();
+        int viewHeight = getMeasuredHeight();
+        synchronized (overlayState) {
+            OverlayState.Snapshot snapshot = overlayState.edit();
+            if (trackedFaceList != null) {
+                for (int i = 0; i < trackedFaceList.getCount(); i++) {
+                    try (TrackedFace tf = trackedFaceList.get(i)) {
+                        if (tf.getTrackingStatus() != TrackingStatus.CONFIRMED) {
+                            continue;
+                        }
+                        try (Rectangle bounds = tf.getPredictedBounds()) {
+                            snapshot.add(
+                                    scaleX(bounds.getTopLeft().x, viewWidth, processingWidth),
+                                    scaleY(bounds.getTopLeft().y, viewHeight, processingHeight),
+                                    scaleX(bounds.getBottomRight().x, viewWidth, processingWidth),
+                                    scaleY(bounds.getBottomRight().y, viewHeight, processingHeight),
+                                    tf.getId());
+                        }
+                    }
+                }
             }
-            this.trackedFaceList = trackedFaceList;
-            isDrawing = true;
-            postInvalidate();
+            overlayState.publish();
         }
+        postInvalidate();
     }
 
     /**
@@ -103,7 +123,6 @@ public class MultipleBoundsView extends View {
     }
 
     public void setPaints() {
-        rect = new Rect();
         textPaint = new Paint();
         textPaint.setColor(Color.GREEN);
         textPaint.setStyle(Paint.Style.FILL);
@@ -138,15 +157,15 @@ public class MultipleBoundsView extends View {
      * The camera in "selfie" mode acts like a mirror in the preview, but the real output
      * is flipped compared to this preview so we need to mirror coordinates.
      */
-    private void scaleRect(Rect rect) {
-        if(Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT) {
-            rect.left = this.getMeasuredWidth() - rect.left * this.getMeasuredWidth() / processingWidth;
-            rect.right = this.getMeasuredWidth() - rect.right * this.getMeasuredWidth() / processingWidth;
+    private static int scaleX(int x, int viewWidth, int processingWidth) {
+        if (Parameters.cameraType == CameraCharacteristics.LENS_FACING_FRONT) {
+            return viewWidth - x * viewWidth / processingWidth;
         } else {
-            rect.left = rect.left * this.getMeasuredWidth() / processingWidth;
-            rect.right = rect.right * this.getMeasuredWidth() / processingWidth;
+            return x * viewWidth / processingWidth;
         }
-        rect.top = rect.top * this.getMeasuredHeight() / processingHeight;
-        rect.bottom = rect.bottom * this.getMeasuredHeight() / processingHeight;
+    }
+
+    private static int scaleY(int y, int viewHeight, int processingHeight) {
+        return y * viewHeight / processingHeight;
     }
 }
@@ -6,5 +6,11 @@ import eu.id3.face.FaceMatcherThreshold;
 
 public class Parameters {
     public final static int maxProcessingImageSize = 512;
+    public final static int minInterOcularDistance = 30;
+    public final static float minInterOcularDistanceRatio = 0.08f;
     public final static int cameraType = CameraCharacteristics.LENS_FACING_FRONT;
+    public final static int modelLoadingThreadCount = 2;
+    public final static long modelMemoryBudget = 100L * 1024 * 1024;
+    public final static boolean frameTraceEnabled = false;
+    public final static int frameTraceCapacity = 4096;
 }
@@ -0,0 +1,457 @@
+import eu.id3.face.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+public class BatchEnrollmentCLI {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("-----------------------------------");
+        System.out.println("id3 Face Samples BatchEnrollmentCLI");
+        System.out.println("-----------------------------------");
+
+        // This sample shows how to enroll a whole directory tree of images into a
+        // gallery file using all the cores of the machine.
+        // Usage: BatchEnrollmentCLI imageDirectory galleryFile [decodeWorkers] [detectWorkers] [encodeWorkers]
+        if (args.length < 2) {
+            System.out.println("Usage: BatchEnrollmentCLI imageDirectory galleryFile"
+                    + " [decodeWorkers] [detectWorkers] [encodeWorkers]");
+            return;
+        }
+        String imageDirectory = args[0];
+        String galleryPath = args[1];
+
+        /**
+         * Images go through three stages: decoding, face detection and face encoding.
+         * Each stage has its own workers, connected to the next stage by a bounded
+         * queue so that a fast stage cannot fill the memory with decoded images.
+         * Detection and encoding are the most expensive stages so they get most of
+         * the cores. Each worker owns its own processor configured with a single
+         * thread: parallelism comes from the workers, not from the processors.
+         */
+        int cores = Runtime.getRuntime().availableProcessors();
+        int decodeWorkers = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(1, cores / 4);
+        int detectWorkers = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(1, cores / 4);
+        int encodeWorkers = args.length > 4 ? Integer.parseInt(args[4]) : Math.max(1, cores / 2);
+
+        // Before calling any function of the SDK you must first check a valid license
+        // file.
+        // To get such a file please use the provided activation tool.
+        FaceLicense.checkLicense("../id3Face.lic");
+
+        String modelPath = "../models";
+        System.out.println("Loading models... ");
+        FaceLibrary.loadModel(modelPath, FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
+        FaceLibrary.loadModel(modelPath, FaceModel.FACE_ENCODER_10A, ProcessingUnit.CPU);
+        System.out.println("Done.\n");
+
+        Path root = new File(imageDirectory).toPath();
+        BlockingQueue<Job> paths = new ArrayBlockingQueue<>(4 * decodeWorkers);
+        BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(2 * detectWorkers);
+        BlockingQueue<Job> detected = new ArrayBlockingQueue<>(2 * encodeWorkers);
+        BlockingQueue<Job> encoded = new ArrayBlockingQueue<>(4 * encodeWorkers);
+        Pipeline pipeline = new Pipeline();
+
+        Stage<AutoCloseable> decodeStage = new Stage<>("decode", decodeWorkers, pipeline, paths, decoded,
+                () -> null,
+                (job, none) -> {
+                    job.image = Image.fromFile(job.path.toString(), PixelFormat.BGR_24_BITS);
+                    // Resize to 512 because of detector limit.
+                    job.image.resize(512, 0);
+                    return true;
+                });
+
+        Stage<FaceDetector> detectStage = new Stage<>("detect", detectWorkers, pipeline, decoded, detected,
+                () -> {
+                    FaceDetector faceDetector = new FaceDetector();
+                    faceDetector.setConfidenceThreshold(70);
+                    faceDetector.setModel(FaceModel.FACE_DETECTOR_4B);
+                    faceDetector.setThreadCount(1);
+                    return faceDetector;
+                },
+                (job, faceDetector) -> {
+                    try (DetectedFaceList detectedFaceList = faceDetector.detectFaces(job.image)) {
+                        if (detectedFaceList.getCount() == 0) {
+                            return false;
+                        }
+                        job.detectedFace = detectedFaceList.getLargestFace();
+                    }
+                    return true;
+                });
+
+        Stage<FaceEncoder> encodeStage = new Stage<>("encode", encodeWorkers, pipeline, detected, encoded,
+                () -> {
+                    FaceEncoder faceEncoder = new FaceEncoder();
+                    faceEncoder.setModel(FaceModel.FACE_ENCODER_10A);
+                    faceEncoder.setThreadCount(1);
+                    return faceEncoder;
+                },
+                (job, faceEncoder) -> {
+                    try (FaceTemplate template = faceEncoder.createTemplate(job.image, job.detectedFace)) {
+                        job.templateBuffer = template.toBuffer();
+                    }
+                    job.release();
+                    return true;
+                });
+
+        System.out.println("Enrolling " + root + " with " + decodeWorkers + " decode, " + detectWorkers
+                + " detect and " + encodeWorkers + " encode workers... ");
+        List<Stage<?>> stages = new ArrayList<>();
+        stages.add(decodeStage);
+        stages.add(detectStage);
+        stages.add(encodeStage);
+        for (Stage<?> stage : stages) {
+            stage.start();
+        }
+
+        Thread walker = new Thread(() -> {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path path : (Iterable<Path>) files.filter(BatchEnrollmentCLI::isImage)::iterator) {
+                    if (!pipeline.put(paths, new Job(path, root.relativize(path)))) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Error while scanning " + root + ": " + e.getMessage());
+            } finally {
+                pipeline.put(paths, Job.END);
+            }
+        }, "directory-walker");
+        walker.start();
+
+        /**
+         * Templates are appended to the gallery file by this thread only, in the
+         * order they come out of the pipeline. Progress is reported periodically.
+         * If the gallery file cannot be written, or a stage fails, the pipeline is
+         * stopped: every worker leaves its queues and the enrollment ends with the
+         * error.
+         */
+        long start = System.nanoTime();
+        long lastReport = start;
+        GalleryFile galleryFile = null;
+        int enrolled = 0;
+        int skipped = 0;
+        while (!pipeline.isFailed()) {
+            Job job = encoded.poll(1, TimeUnit.SECONDS);
+            if (System.nanoTime() - lastReport > 10_000_000_000L) {
+                lastReport = System.nanoTime();
+                report(stages, enrolled, start);
+            }
+            if (job == null) {
+                continue;
+            }
+            if (job == Job.END) {
+                break;
+            }
+            try {
+                if (galleryFile == null) {
+                    galleryFile = new File(galleryPath).exists()
+                            ? GalleryFile.open(galleryPath)
+                            : GalleryFile.create(galleryPath, job.templateBuffer.length, 1024);
+                }
+                if (galleryFile.find(job.id) >= 0) {
+                    // Enrolled by a previous run on the same gallery file.
+                    skipped++;
+                    continue;
+                }
+                galleryFile.append(job.id, job.templateBuffer);
+                enrolled++;
+            } catch (IllegalArgumentException e) {
+                // The id or the template does not fit in a record of the gallery file.
+                System.out.println("Skipping " + job.path + ": " + e.getMessage());
+                skipped++;
+            } catch (IOException | RuntimeException e) {
+                pipeline.fail("Cannot write gallery file " + galleryPath, e);
+            }
+        }
+        walker.join();
+        for (Stage<?> stage : stages) {
+            stage.join();
+        }
+        for (BlockingQueue<Job> queue : Arrays.asList(paths, decoded, detected, encoded)) {
+            for (Job job : queue) {
+                job.release();
+            }
+            queue.clear();
+        }
+        if (pipeline.isFailed()) {
+            if (galleryFile != null) {
+                galleryFile.close();
+            }
+            FaceLibrary.unloadModel(FaceModel.FACE_ENCODER_10A, ProcessingUnit.CPU);
+            FaceLibrary.unloadModel(FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
+            throw new IllegalStateException("Enrollment failed: " + pipeline.getFailureMessage(),
+                    pipeline.getFailure());
+        }
+        System.out.println("Done.\n");
+        report(stages, enrolled, start);
+        if (skipped > 0) {
+            System.out.println(skipped + " images skipped, already enrolled or not fitting in the gallery records.");
+        }
+
+        if (galleryFile != null) {
+            System.out.println("Gallery " + galleryPath + " contains " + galleryFile.getLiveCount() + " templates.");
+            galleryFile.close();
+        }
+
+        /**
+         * Unload models
+         */
+        FaceLibrary.unloadModel(FaceModel.FACE_ENCODER_10A, ProcessingUnit.CPU);
+        FaceLibrary.unloadModel(FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
+
+        System.out.println("Sample terminated successfully.");
+    }
+
+    private static boolean isImage(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") || name.endsWith(".bmp");
+    }
+
+    private static void report(List<Stage<?>> stages, int enrolled, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "[%7.1f s] enrolled: %d (%.1f img/s)",
+                seconds, enrolled, enrolled / seconds));
+        for (Stage<?> stage : stages) {
+            line.append(" | ").append(stage.summary(seconds));
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Failure state shared by the walker, the stages and the gallery writer. Once
+     * the pipeline has failed, puts and takes give up instead of blocking on
+     * queues which are no longer drained or filled.
+     */
+    static class Pipeline {
+        private final AtomicReference<String> failureMessage = new AtomicReference<>();
+        private volatile Throwable failure;
+
+        /**
+         * Stops the pipeline. Only the first failure is kept.
+         */
+        void fail(String message, Throwable cause) {
+            if (failureMessage.compareAndSet(null, message + ": " + cause.getMessage())) {
+                failure = cause;
+                System.out.println(failureMessage.get());
+            }
+        }
+
+        boolean isFailed() {
+            return failureMessage.get() != null;
+        }
+
+        String getFailureMessage() {
+            return failureMessage.get();
+        }
+
+        Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * Puts a job in a queue, retrying when interrupted since the end marker must
+         * reach the next stage. Returns false if the pipeline failed first.
+         */
+        boolean put(BlockingQueue<Job> queue, Job job) {
+            boolean interrupted = false;
+            try {
+                while (!isFailed()) {
+                    try {
+                        if (queue.offer(job, 100, TimeUnit.MILLISECONDS)) {
+                            return true;
+                        }
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                return false;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Takes a job from a queue, or returns null if the pipeline failed first.
+         */
+        Job take(BlockingQueue<Job> queue) throws InterruptedException {
+            while (!isFailed()) {
+                Job job = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (job != null) {
+                    return job;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An image going through the pipeline.
+     */
+    static class Job {
+        static final Job END = new Job(null, null);
+
+        final Path path;
+        final String id;
+        Image image;
+        DetectedFace detectedFace;
+        byte[] templateBuffer;
+
+        Job(Path path, Path relativePath) {
+            this.path = path;
+            if (relativePath == null) {
+                this.id = null;
+            } else {
+                String name = relativePath.toString().replace(File.separatorChar, '/');
+                int extension = name.lastIndexOf('.');
+                this.id = extension > 0 ? name.substring(0, extension) : name;
+            }
+        }
+
+        /**
+         * id3 Face SDK Java objects hold native memory and must manually released
+         */
+        void release() {
+            if (detectedFace != null) {
+                detectedFace.close();
+                detectedFace = null;
+            }
+            if (image != null) {
+                image.close();
+                image = null;
+            }
+        }
+    }
+
+    interface StageFunction<R> {
+        /**
+         * Processes a job, returns false if the job must not go to the next stage.
+         */
+        boolean process(Job job, R resource) throws Exception;
+    }
+
+    /**
+     * A pool of workers taking jobs from an input queue and giving them to an
+     * output queue. Each worker creates its own resource (typically a processor)
+     * and closes it when the stage ends. A worker which cannot create its resource
+     * fails the whole pipeline.
+     */
+    static class Stage<R extends AutoCloseable> {
+        private final String name;
+        private final Pipeline pipeline;
+        private final List<Thread> workers = new ArrayList<>();
+        private final BlockingQueue<Job> input;
+        private final BlockingQueue<Job> output;
+        private final Supplier<R> resourceFactory;
+        private final StageFunction<R> function;
+        private final AtomicInteger runningWorkers;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        Stage(String name, int workerCount, Pipeline pipeline, BlockingQueue<Job> input, BlockingQueue<Job> output,
+              Supplier<R> resourceFactory, StageFunction<R> function) {
+            this.name = name;
+            this.pipeline = pipeline;
+            this.input = input;
+            this.output = output;
+            this.resourceFactory = resourceFactory;
+            this.function = function;
+            this.runningWorkers = new AtomicInteger(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(new Thread(this::run, name + "-worker-" + i));
+            }
+        }
+
+        void start() {
+            for (Thread worker : workers) {
+                worker.start();
+            }
+        }
+
+        void join() throws InterruptedException {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        private void run() {
+            R resource = null;
+            try {
+                resource = resourceFactory.get();
+                while (true) {
+                    Job job = pipeline.take(input);
+                    if (job == null) {
+                        break;
+                    }
+                    if (job == Job.END) {
+                        // Give the end marker back to the other workers of this stage.
+                        pipeline.put(input, Job.END);
+                        break;
+                    }
+                    long begin = System.nanoTime();
+                    boolean keep;
+                    try {
+                        keep = function.process(job, resource);
+                    } catch (Exception e) {
+                        System.out.println("Error while processing " + job.path + " (" + name + "): " + e.getMessage());
+                        keep = false;
+                    }
+                    busyNanos.addAndGet(System.nanoTime() - begin);
+                    if (keep) {
+                        processed.incrementAndGet();
+                        if (!pipeline.put(output, job)) {
+                            job.release();
+                            break;
+                        }
+                    } else {
+                        dropped.incrementAndGet();
+                        job.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException | Error e) {
+                pipeline.fail("Error in " + name + " worker", e);
+            } finally {
+                if (resource != null) {
+                    try {
+                        resource.close();
+                    } catch (Exception e) {
+                        // Nothing more can be done at this point.
+                    }
+                }
+                if (runningWorkers.decrementAndGet() == 0) {
+                    pipeline.put(output, Job.END);
+                }
+            }
+        }
+
+        /**
+         * Throughput of the stage over the elapsed time and, between brackets, the
+         * throughput of a single busy worker.
+         */
+        String summary(double elapsedSeconds) {
+            long count = processed.get() + dropped.get();
+            double busySeconds = busyNanos.get() / 1e9;
+            return String.format(Locale.ROOT, "%s: %.1f img/s [%.1f img/s/worker, %d dropped]",
+                    name, count / elapsedSeconds, busySeconds > 0 ? count / busySeconds : 0.0, dropped.get());
+        }
+    }
+}
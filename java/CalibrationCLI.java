@@ -0,0 +1,292 @@
+import eu.id3.face.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class CalibrationCLI {
+    private static final int SCORE_COUNT = 65536;
+    private static final int BLOCK_SIZE = 256;
+    private static final double[] TARGET_FMRS = { 1e-2, 1e-3, 1e-4, 1e-5, 1e-6 };
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("-------------------------------");
+        System.out.println("id3 Face Samples CalibrationCLI");
+        System.out.println("-------------------------------");
+
+        // This sample shows how to calibrate the matching thresholds on your own
+        // population. Every template of a labelled dataset is compared to every other
+        // one: comparisons of two templates of the same identity give the genuine
+        // scores, the other ones give the impostor scores.
+        // Usage: CalibrationCLI templateDirectory [detCurveFile] [workers]
+        // The template directory holds one sub-directory per identity, containing
+        // the template files of this identity exported with FaceTemplate.toFile().
+        if (args.length < 1) {
+            System.out.println("Usage: CalibrationCLI templateDirectory [detCurveFile] [workers]");
+            return;
+        }
+        String templateDirectory = args[0];
+        String detCurvePath = args.length > 1 ? args[1] : "det.csv";
+        int workerCount = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        // Before calling any function of the SDK you must first check a valid license
+        // file.
+        // To get such a file please use the provided activation tool.
+        FaceLicense.checkLicense("../id3Face.lic");
+
+        System.out.println("Loading templates from " + templateDirectory + "... ");
+        List<FaceTemplate> templateList = new ArrayList<>();
+        List<Integer> labelList = new ArrayList<>();
+        int identityCount = loadDataset(templateDirectory, templateList, labelList);
+        FaceTemplate[] templates = templateList.toArray(new FaceTemplate[0]);
+        int[] labels = labelList.stream().mapToInt(Integer::intValue).toArray();
+        System.out.println("Done: " + templates.length + " templates of " + identityCount + " identities.\n");
+
+        /**
+         * Compare all the pairs of templates.
+         * The upper triangle of the score matrix is split into square blocks of
+         * BLOCK_SIZE templates, scanned by a fixed pool of workers each owning its own
+         * FaceMatcher. Scores are not stored: each worker counts them in two histograms
+         * of 65536 bins, one per score value, which are merged at the end. The memory
+         * used by the scores is hence constant, whatever the size of the dataset.
+         */
+        long pairCount = (long) templates.length * (templates.length - 1) / 2;
+        System.out.println("Comparing " + pairCount + " pairs with " + workerCount + " workers... ");
+        int blockCount = (templates.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        AtomicInteger nextRowBlock = new AtomicInteger();
+        AtomicLong compared = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        List<Future<ScoreHistograms>> futures = new ArrayList<>(workerCount);
+        long start = System.nanoTime();
+        for (int i = 0; i < workerCount; i++) {
+            futures.add(executor.submit(() -> compareBlocks(templates, labels, blockCount, nextRowBlock, compared)));
+        }
+        executor.shutdown();
+        while (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            report(compared.get(), pairCount, start);
+        }
+
+        ScoreHistograms histograms = new ScoreHistograms();
+        try {
+            for (Future<ScoreHistograms> future : futures) {
+                histograms.merge(future.get());
+            }
+        } catch (ExecutionException e) {
+            System.out.println("Error while comparing templates: " + e.getCause().getMessage());
+            return;
+        } finally {
+            for (FaceTemplate template : templates) {
+                template.close();
+            }
+        }
+        System.out.println("Done.\n");
+        report(compared.get(), pairCount, start);
+
+        long genuineCount = histograms.getGenuineCount();
+        long impostorCount = histograms.getImpostorCount();
+        System.out.println("\n" + genuineCount + " genuine scores, " + impostorCount + " impostor scores.\n");
+        if (genuineCount == 0 || impostorCount == 0) {
+            System.out.println("Both genuine and impostor scores are needed: enroll several identities"
+                    + " with at least two templates each.");
+            return;
+        }
+
+        /**
+         * Thresholds.
+         * A comparison is a match when its score is strictly greater than the
+         * threshold. For each target FMR, the lowest threshold whose measured FMR does
+         * not exceed the target is given, with the FNMR measured at this threshold.
+         * An FMR can only be measured with enough impostor scores: targets below
+         * 1 / impostorCount are marked as not reliable.
+         */
+        long[] impostorsAbove = histograms.countImpostorsAbove();
+        long[] genuinesAtOrBelow = histograms.countGenuinesAtOrBelow();
+        System.out.println("\ttarget FMR\tthreshold\tFMR\t\tFNMR");
+        for (double targetFmr : TARGET_FMRS) {
+            int threshold = 0;
+            while (threshold < SCORE_COUNT - 1 && impostorsAbove[threshold] > targetFmr * impostorCount) {
+                threshold++;
+            }
+            System.out.println(String.format(Locale.ROOT, "\t%.0e\t\t%d\t\t%.3e\t%.3e%s", targetFmr, threshold,
+                    (double) impostorsAbove[threshold] / impostorCount,
+                    (double) genuinesAtOrBelow[threshold] / genuineCount,
+                    targetFmr * impostorCount < 1 ? "\t(not reliable)" : ""));
+        }
+
+        System.out.println("\n\tSDK threshold\tvalue\t\tFMR\t\tFNMR");
+        for (FaceMatcherThreshold sdkThreshold : FaceMatcherThreshold.values()) {
+            int threshold = Math.min(Math.max(sdkThreshold.getValue(), 0), SCORE_COUNT - 1);
+            System.out.println(String.format(Locale.ROOT, "\t%s\t%d\t\t%.3e\t%.3e", sdkThreshold, threshold,
+                    (double) impostorsAbove[threshold] / impostorCount,
+                    (double) genuinesAtOrBelow[threshold] / genuineCount));
+        }
+
+        /**
+         * DET curve.
+         * One line per score value reached by at least one comparison, the FMR and
+         * FNMR being those of a threshold equal to this score.
+         */
+        try (PrintWriter writer = new PrintWriter(detCurvePath, "UTF-8")) {
+            writer.println("threshold,fmr,fnmr");
+            for (int threshold = 0; threshold < SCORE_COUNT; threshold++) {
+                if (histograms.genuine[threshold] == 0 && histograms.impostor[threshold] == 0) {
+                    continue;
+                }
+                writer.println(String.format(Locale.ROOT, "%d,%.6e,%.6e", threshold,
+                        (double) impostorsAbove[threshold] / impostorCount,
+                        (double) genuinesAtOrBelow[threshold] / genuineCount));
+            }
+        }
+        System.out.println("\nDET curve written to " + detCurvePath + ".");
+
+        System.out.println("Sample terminated successfully.");
+    }
+
+    /**
+     * Loads the templates of every identity sub-directory, sorted by name, and
+     * returns the number of identities. Templates of a same identity are contiguous.
+     */
+    private static int loadDataset(String directory, List<FaceTemplate> templates, List<Integer> labels)
+            throws IOException {
+        List<Path> identities;
+        try (Stream<Path> stream = Files.list(new File(directory).toPath())) {
+            identities = stream.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        int identityCount = 0;
+        for (Path identity : identities) {
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(identity)) {
+                files = stream
+                        .filter(path -> path.toString().endsWith(".bin"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            if (files.isEmpty()) {
+                continue;
+            }
+            for (Path file : files) {
+                templates.add(FaceTemplate.fromFile(file.toString()));
+                labels.add(identityCount);
+            }
+            identityCount++;
+        }
+        return identityCount;
+    }
+
+    /**
+     * Compares the pairs of the row blocks taken from nextRowBlock until none is
+     * left. Row blocks are taken in increasing order, the first ones holding the
+     * most pairs, so that the workers end at about the same time.
+     */
+    private static ScoreHistograms compareBlocks(FaceTemplate[] templates, int[] labels, int blockCount,
+                                                 AtomicInteger nextRowBlock, AtomicLong compared) {
+        ScoreHistograms histograms = new ScoreHistograms();
+        try (FaceMatcher faceMatcher = new FaceMatcher()) {
+            int rowBlock;
+            while ((rowBlock = nextRowBlock.getAndIncrement()) < blockCount) {
+                int rowBegin = rowBlock * BLOCK_SIZE;
+                int rowEnd = Math.min(templates.length, rowBegin + BLOCK_SIZE);
+                for (int columnBlock = rowBlock; columnBlock < blockCount; columnBlock++) {
+                    int columnBegin = columnBlock * BLOCK_SIZE;
+                    int columnEnd = Math.min(templates.length, columnBegin + BLOCK_SIZE);
+                    long pairs = 0;
+                    for (int i = rowBegin; i < rowEnd; i++) {
+                        for (int j = Math.max(columnBegin, i + 1); j < columnEnd; j++) {
+                            int score = faceMatcher.compareTemplates(templates[i], templates[j]);
+                            histograms.add(labels[i] == labels[j], score);
+                            pairs++;
+                        }
+                    }
+                    compared.addAndGet(pairs);
+                }
+            }
+        }
+        return histograms;
+    }
+
+    private static void report(long compared, long pairCount, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = compared / Math.max(seconds, 1e-9);
+        System.out.println(String.format(Locale.ROOT, "[%7.1f s] compared: %d / %d (%.0f pairs/s, %.0f s left)",
+                seconds, compared, pairCount, rate, rate > 0 ? (pairCount - compared) / rate : 0.0));
+    }
+
+    /**
+     * Number of genuine and impostor comparisons for each score value.
+     */
+    private static class ScoreHistograms {
+        final long[] genuine = new long[SCORE_COUNT];
+        final long[] impostor = new long[SCORE_COUNT];
+
+        void add(boolean isGenuine, int score) {
+            int bin = Math.min(Math.max(score, 0), SCORE_COUNT - 1);
+            if (isGenuine) {
+                genuine[bin]++;
+            } else {
+                impostor[bin]++;
+            }
+        }
+
+        void merge(ScoreHistograms other) {
+            for (int i = 0; i < SCORE_COUNT; i++) {
+                genuine[i] += other.genuine[i];
+                impostor[i] += other.impostor[i];
+            }
+        }
+
+        long getGenuineCount() {
+            long count = 0;
+            for (long value : genuine) {
+                count += value;
+            }
+            return count;
+        }
+
+        long getImpostorCount() {
+            long count = 0;
+            for (long value : impostor) {
+                count += value;
+            }
+            return count;
+        }
+
+        /**
+         * For each threshold, the number of impostor scores strictly above it.
+         */
+        long[] countImpostorsAbove() {
+            long[] above = new long[SCORE_COUNT];
+            for (int i = SCORE_COUNT - 2; i >= 0; i--) {
+                above[i] = above[i + 1] + impostor[i + 1];
+            }
+            return above;
+        }
+
+        /**
+         * For each threshold, the number of genuine scores lower than or equal to it.
+         */
+        long[] countGenuinesAtOrBelow() {
+            long[] atOrBelow = new long[SCORE_COUNT];
+            long count = 0;
+            for (int i = 0; i < SCORE_COUNT; i++) {
+                count += genuine[i];
+                atOrBelow[i] = count;
+            }
+            return atOrBelow;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import eu.id3.face.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coarse-to-fine 1:N search engine working on two galleries enrolling the same
+ * identities with two encoders: a fast one (e.g. the lightweight
+ * FACE_ENCODER_10B) and an accurate one (e.g. FACE_ENCODER_10A).
+ *
+ * The probe template of the fast encoder is compared to the whole fast gallery
+ * by an IdentificationEngine, which keeps a shortlist of the best candidates.
+ * Only the shortlisted identities are then compared with the probe template of
+ * the accurate encoder. Templates of two different encoders cannot be compared
+ * with each other: the probe must be encoded with both.
+ *
+ * The whole gallery is still scanned, one comparison per template. The cascade
+ * is therefore only faster than an exhaustive search with the accurate encoder
+ * when a comparison of fast templates is cheaper than a comparison of accurate
+ * templates, by enough to pay for the second probe encoding. The
+ * EncoderBenchmark of the benchmark module measures both costs.
+ *
+ * The shortlist must be long enough for the identity ranked first by the
+ * accurate encoder to be kept by the fast one.
+ */
+public class CascadedIdentificationEngine implements AutoCloseable {
+    private final TemplateGallery accurateGallery;
+    private final IdentificationEngine fastEngine;
+    private final int shortlistSize;
+    /* Position in the accurate gallery of each template of the fast gallery. */
+    private final int[] accurateIndexes;
+    private final FaceMatcher rescoringMatcher = new FaceMatcher();
+
+    /**
+     * Creates an engine scanning the fast gallery with one worker per available
+     * CPU core.
+     */
+    public CascadedIdentificationEngine(TemplateGallery fastGallery, TemplateGallery accurateGallery,
+                                        int shortlistSize) {
+        this(fastGallery, accurateGallery, shortlistSize, Runtime.getRuntime().availableProcessors(),
+                GalleryPartitioner.perWorker());
+    }
+
+    /**
+     * Both galleries must enroll the same identifiers, in any order. They must not
+     * be modified while the engine is in use.
+     */
+    public CascadedIdentificationEngine(TemplateGallery fastGallery, TemplateGallery accurateGallery,
+                                        int shortlistSize, int workerCount, GalleryPartitioner partitioner) {
+        if (shortlistSize <= 0) {
+            throw new IllegalArgumentException("Shortlist size must be positive.");
+        }
+        if (fastGallery.size() != accurateGallery.size()) {
+            throw new IllegalArgumentException("Galleries have different sizes: " + fastGallery.size()
+                    + " fast templates and " + accurateGallery.size() + " accurate templates.");
+        }
+        Map<String, Integer> accurateIndexById = new HashMap<>();
+        for (int i = 0; i < accurateGallery.size(); i++) {
+            accurateIndexById.put(accurateGallery.getId(i), i);
+        }
+        accurateIndexes = new int[fastGallery.size()];
+        for (int i = 0; i < accurateIndexes.length; i++) {
+            Integer accurateIndex = accurateIndexById.get(fastGallery.getId(i));
+            if (accurateIndex == null) {
+                throw new IllegalArgumentException("No accurate template for " + fastGallery.getId(i) + ".");
+            }
+            accurateIndexes[i] = accurateIndex;
+        }
+        this.accurateGallery = accurateGallery;
+        this.shortlistSize = shortlistSize;
+        this.fastEngine = new IdentificationEngine(fastGallery, workerCount, partitioner);
+    }
+
+    public int getShortlistSize() {
+        return shortlistSize;
+    }
+
+    public int getWorkerCount() {
+        return fastEngine.getWorkerCount();
+    }
+
+    /**
+     * Returns the maxCandidates shortlisted entries with the highest accurate
+     * scores, sorted by decreasing score. Indexes of the candidates refer to the
+     * accurate gallery.
+     */
+    public List<IdentificationCandidate> search(FaceTemplate fastProbe, FaceTemplate accurateProbe,
+                                                int maxCandidates) {
+        if (maxCandidates <= 0) {
+            throw new IllegalArgumentException("Candidate count must be positive.");
+        }
+        List<IdentificationCandidate> shortlist = fastEngine.search(fastProbe, Math.max(shortlistSize, maxCandidates));
+
+        List<IdentificationCandidate> candidates = new ArrayList<>(shortlist.size());
+        synchronized (rescoringMatcher) {
+            for (IdentificationCandidate shortlisted : shortlist) {
+                int accurateIndex = accurateIndexes[shortlisted.getIndex()];
+                int score = rescoringMatcher.compareTemplates(accurateProbe, accurateGallery.getTemplate(accurateIndex));
+                candidates.add(new IdentificationCandidate(shortlisted.getId(), accurateIndex, score));
+            }
+        }
+        Collections.sort(candidates);
+        return candidates.size() > maxCandidates ? new ArrayList<>(candidates.subList(0, maxCandidates)) : candidates;
+    }
+
+    /**
+     * Stops the workers and releases the matchers. The galleries are not closed.
+     */
+    @Override
+    public void close() {
+        fastEngine.close();
+        synchronized (rescoringMatcher) {
+            rescoringMatcher.close();
+        }
+    }
+}
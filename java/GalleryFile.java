@@ -0,0 +1,407 @@
+import eu.id3.face.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Single file template gallery, memory-mapped with FileChannel.map.
+ *
+ * Layout (little endian):
+ * - header (64 bytes): magic, version, template size, id size, capacity, record
+ * count and live record count.
+ * - id table: capacity entries of (4 + idSize) bytes, an entry being the length
+ * of the UTF-8 id (or DELETED for a tombstone) followed by the id bytes.
+ * - records: capacity entries of (4 + templateSize) bytes, a record being the
+ * length of the template buffer followed by the FaceTemplate.toBuffer() bytes.
+ *
+ * Opening a gallery only maps the file: templates are read when they are
+ * accessed, so opening time does not depend on the gallery size.
+ *
+ * Growing and compacting move the records inside the file, through new
+ * mappings, instead of replacing the file: a mapped file cannot be replaced or
+ * truncated on Windows until its mappings are garbage collected.
+ */
+public class GalleryFile implements AutoCloseable {
+    public static final int DEFAULT_ID_SIZE = 64;
+
+    private static final int MAGIC = 0x47334449; // "ID3G"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int DELETED = -1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int TEMPLATE_SIZE_OFFSET = 8;
+    private static final int ID_SIZE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int COUNT_OFFSET = 20;
+    private static final int LIVE_COUNT_OFFSET = 24;
+
+    private final String path;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private MappedByteBuffer[] segments;
+
+    private int templateSize;
+    private int idSize;
+    private int capacity;
+    private int count;
+    private int liveCount;
+    private int recordStride;
+    private int idStride;
+    private int recordsPerSegment;
+
+    private GalleryFile(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Creates an empty gallery. templateSize is the maximum size in bytes of a
+     * template buffer, which is fixed for a given encoder model.
+     */
+    public static GalleryFile create(String path, int templateSize, int capacity) throws IOException {
+        return create(path, templateSize, DEFAULT_ID_SIZE, capacity);
+    }
+
+    public static GalleryFile create(String path, int templateSize, int idSize, int capacity) throws IOException {
+        if (templateSize <= 0 || idSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Template size, id size and capacity must be positive.");
+        }
+        Files.deleteIfExists(new File(path).toPath());
+        GalleryFile galleryFile = new GalleryFile(path);
+        galleryFile.map(templateSize, idSize, capacity, true);
+        return galleryFile;
+    }
+
+    /**
+     * Returns true if the file starts like a gallery file, as opposed to, for
+     * instance, a single template exported with FaceTemplate.toFile().
+     */
+    public static boolean isGalleryFile(Path path) throws IOException {
+        try (FileChannel header = FileChannel.open(path)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            return header.read(buffer, 0) == 4 && buffer.getInt(MAGIC_OFFSET) == MAGIC;
+        }
+    }
+
+    /**
+     * Opens an existing gallery.
+     */
+    public static GalleryFile open(String path) throws IOException {
+        GalleryFile galleryFile = new GalleryFile(path);
+        try (RandomAccessFile header = new RandomAccessFile(path, "r")) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.getChannel().read(buffer, 0);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException(path + " is not a gallery file.");
+            }
+            if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Unsupported gallery file version: " + buffer.getInt(VERSION_OFFSET));
+            }
+            galleryFile.map(buffer.getInt(TEMPLATE_SIZE_OFFSET), buffer.getInt(ID_SIZE_OFFSET),
+                    buffer.getInt(CAPACITY_OFFSET), false);
+        }
+        return galleryFile;
+    }
+
+    private void map(int templateSize, int idSize, int capacity, boolean initialize) throws IOException {
+        this.templateSize = templateSize;
+        this.idSize = idSize;
+        this.capacity = capacity;
+        this.recordStride = 4 + templateSize;
+        this.idStride = 4 + idSize;
+        this.recordsPerSegment = Integer.MAX_VALUE / recordStride;
+
+        long tableSize = HEADER_SIZE + (long) idStride * capacity;
+        long fileSize = tableSize + (long) recordStride * capacity;
+        if (tableSize > Integer.MAX_VALUE) {
+            throw new IOException("Gallery capacity is too large: " + capacity);
+        }
+
+        file = new RandomAccessFile(path, "rw");
+        if (file.length() < fileSize) {
+            file.setLength(fileSize);
+        }
+        channel = file.getChannel();
+        table = mapTable(capacity);
+        segments = mapSegments(capacity);
+
+        if (initialize) {
+            table.putInt(MAGIC_OFFSET, MAGIC);
+            table.putInt(VERSION_OFFSET, VERSION);
+            table.putInt(TEMPLATE_SIZE_OFFSET, templateSize);
+            table.putInt(ID_SIZE_OFFSET, idSize);
+            table.putInt(CAPACITY_OFFSET, capacity);
+            table.putInt(COUNT_OFFSET, 0);
+            table.putInt(LIVE_COUNT_OFFSET, 0);
+        }
+        count = table.getInt(COUNT_OFFSET);
+        liveCount = table.getInt(LIVE_COUNT_OFFSET);
+    }
+
+    private MappedByteBuffer mapTable(int capacity) throws IOException {
+        long tableSize = HEADER_SIZE + (long) idStride * capacity;
+        if (tableSize > Integer.MAX_VALUE) {
+            throw new IOException("Gallery capacity is too large: " + capacity);
+        }
+        MappedByteBuffer mappedTable = channel.map(FileChannel.MapMode.READ_WRITE, 0, tableSize);
+        mappedTable.order(ByteOrder.LITTLE_ENDIAN);
+        return mappedTable;
+    }
+
+    private MappedByteBuffer[] mapSegments(int capacity) throws IOException {
+        long tableSize = HEADER_SIZE + (long) idStride * capacity;
+        int segmentCount = (capacity + recordsPerSegment - 1) / recordsPerSegment;
+        MappedByteBuffer[] mappedSegments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int records = Math.min(recordsPerSegment, capacity - i * recordsPerSegment);
+            long offset = tableSize + (long) recordStride * recordsPerSegment * i;
+            mappedSegments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) recordStride * records);
+            mappedSegments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return mappedSegments;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getTemplateSize() {
+        return templateSize;
+    }
+
+    /**
+     * Number of records, including deleted ones.
+     */
+    public synchronized int getRecordCount() {
+        return count;
+    }
+
+    /**
+     * Number of records which are not deleted.
+     */
+    public synchronized int getLiveCount() {
+        return liveCount;
+    }
+
+    public synchronized boolean isDeleted(int record) {
+        checkRecord(record);
+        return table.getInt(idOffset(record)) == DELETED;
+    }
+
+    public synchronized String getId(int record) {
+        checkRecord(record);
+        int offset = idOffset(record);
+        int length = table.getInt(offset);
+        if (length == DELETED) {
+            return null;
+        }
+        byte[] id = new byte[length];
+        ByteBuffer view = table.duplicate();
+        view.position(offset + 4);
+        view.get(id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the index of the first live record with the given id, or -1.
+     */
+    public synchronized int find(String id) {
+        for (int i = 0; i < count; i++) {
+            if (id.equals(getId(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a template buffer, as exported by FaceTemplate.toBuffer().
+     */
+    public synchronized byte[] readTemplateBuffer(int record) {
+        checkRecord(record);
+        ByteBuffer view = segments[record / recordsPerSegment].duplicate();
+        int offset = (record % recordsPerSegment) * recordStride;
+        byte[] buffer = new byte[view.order(ByteOrder.LITTLE_ENDIAN).getInt(offset)];
+        view.position(offset + 4);
+        view.get(buffer);
+        return buffer;
+    }
+
+    public FaceTemplate readTemplate(int record) {
+        return FaceTemplate.fromBuffer(readTemplateBuffer(record));
+    }
+
+    /**
+     * Appends a record and returns its index. The file grows when its capacity is
+     * reached.
+     */
+    public synchronized int append(String id, byte[] templateBuffer) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > idSize) {
+            throw new IllegalArgumentException("Id is longer than " + idSize + " bytes: " + id);
+        }
+        if (templateBuffer.length > templateSize) {
+            throw new IllegalArgumentException("Template is larger than " + templateSize + " bytes.");
+        }
+        if (count == capacity) {
+            grow(Math.max(16, capacity * 2));
+        }
+
+        int record = count;
+        ByteBuffer segment = segments[record / recordsPerSegment].duplicate();
+        int offset = (record % recordsPerSegment) * recordStride;
+        segment.order(ByteOrder.LITTLE_ENDIAN).putInt(offset, templateBuffer.length);
+        segment.position(offset + 4);
+        segment.put(templateBuffer);
+
+        ByteBuffer view = table.duplicate();
+        view.position(idOffset(record) + 4);
+        view.put(idBytes);
+        table.putInt(idOffset(record), idBytes.length);
+
+        count++;
+        liveCount++;
+        table.putInt(COUNT_OFFSET, count);
+        table.putInt(LIVE_COUNT_OFFSET, liveCount);
+        return record;
+    }
+
+    public int append(String id, FaceTemplate template) throws IOException {
+        return append(id, template.toBuffer());
+    }
+
+    /**
+     * Marks a record as deleted. Its space is reclaimed by compact().
+     */
+    public synchronized boolean delete(int record) {
+        checkRecord(record);
+        if (table.getInt(idOffset(record)) == DELETED) {
+            return false;
+        }
+        table.putInt(idOffset(record), DELETED);
+        liveCount--;
+        table.putInt(LIVE_COUNT_OFFSET, liveCount);
+        return true;
+    }
+
+    public synchronized boolean delete(String id) {
+        int record = find(id);
+        return record >= 0 && delete(record);
+    }
+
+    /**
+     * Moves the live records over the deleted ones, so that their space is reused
+     * by the next appends. Record indexes change, the file size does not.
+     */
+    public synchronized void compact() throws IOException {
+        byte[] idEntry = new byte[idStride];
+        byte[] record = new byte[recordStride];
+        int live = 0;
+        for (int i = 0; i < count; i++) {
+            if (table.getInt(idOffset(i)) == DELETED) {
+                continue;
+            }
+            if (live != i) {
+                copy(table, idOffset(i), table, idOffset(live), idEntry);
+                copy(segments[i / recordsPerSegment], (i % recordsPerSegment) * recordStride,
+                        segments[live / recordsPerSegment], (live % recordsPerSegment) * recordStride, record);
+            }
+            live++;
+        }
+        count = live;
+        liveCount = live;
+        table.putInt(COUNT_OFFSET, count);
+        table.putInt(LIVE_COUNT_OFFSET, liveCount);
+    }
+
+    /**
+     * Extends the file to newCapacity records. The id table grows over the first
+     * records, so every record is moved further in the file, the last one first
+     * since the old and new positions overlap.
+     */
+    private void grow(int newCapacity) throws IOException {
+        long newFileSize = HEADER_SIZE + (long) (idStride + recordStride) * newCapacity;
+        if (file.length() < newFileSize) {
+            file.setLength(newFileSize);
+        }
+        MappedByteBuffer newTable = mapTable(newCapacity);
+        MappedByteBuffer[] oldSegments = segments;
+        MappedByteBuffer[] newSegments = mapSegments(newCapacity);
+
+        byte[] record = new byte[recordStride];
+        for (int i = count - 1; i >= 0; i--) {
+            int offset = (i % recordsPerSegment) * recordStride;
+            copy(oldSegments[i / recordsPerSegment], offset, newSegments[i / recordsPerSegment], offset, record);
+        }
+
+        table = newTable;
+        segments = newSegments;
+        capacity = newCapacity;
+        table.putInt(CAPACITY_OFFSET, capacity);
+    }
+
+    private static void copy(ByteBuffer source, int sourceOffset, ByteBuffer target, int targetOffset, byte[] buffer) {
+        ByteBuffer view = source.duplicate();
+        view.position(sourceOffset);
+        view.get(buffer);
+        view = target.duplicate();
+        view.position(targetOffset);
+        view.put(buffer);
+    }
+
+    /**
+     * Materializes the live records as FaceTemplate objects for searching.
+     */
+    public TemplateGallery loadGallery() {
+        TemplateGallery gallery = new TemplateGallery();
+        int recordCount = getRecordCount();
+        for (int i = 0; i < recordCount; i++) {
+            String id = getId(i);
+            if (id != null) {
+                gallery.add(id, readTemplateBuffer(i));
+            }
+        }
+        return gallery;
+    }
+
+    /**
+     * Forces the mapped content to the storage device.
+     */
+    public synchronized void flush() {
+        table.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.close();
+            file.close();
+            channel = null;
+            file = null;
+        }
+    }
+
+    private int idOffset(int record) {
+        return HEADER_SIZE + record * idStride;
+    }
+
+    private void checkRecord(int record) {
+        if (record < 0 || record >= count) {
+            throw new IndexOutOfBoundsException("Invalid record: " + record);
+        }
+    }
+}
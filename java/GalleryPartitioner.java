@@ -0,0 +1,39 @@
+/**
+ * Splits a gallery of templates into contiguous index ranges that are searched
+ * concurrently by the IdentificationEngine.
+ *
+ * A partitioner returns the range boundaries as an array of length
+ * (rangeCount + 1) where range i covers [bounds[i], bounds[i + 1]).
+ */
+public interface GalleryPartitioner {
+
+    int[] partition(int gallerySize, int workerCount);
+
+    /**
+     * One equally sized range per worker. Best when every comparison costs the
+     * same and the workers are not shared with anything else.
+     */
+    static GalleryPartitioner perWorker() {
+        return (gallerySize, workerCount) -> split(gallerySize, Math.max(1, workerCount));
+    }
+
+    /**
+     * Fixed size chunks, usually many more than workers. Idle workers pick up the
+     * remaining chunks, which balances the load when some cores are busy.
+     */
+    static GalleryPartitioner chunked(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive.");
+        }
+        return (gallerySize, workerCount) -> split(gallerySize, (gallerySize + chunkSize - 1) / chunkSize);
+    }
+
+    static int[] split(int gallerySize, int rangeCount) {
+        rangeCount = Math.max(1, Math.min(rangeCount, gallerySize));
+        int[] bounds = new int[rangeCount + 1];
+        for (int i = 0; i <= rangeCount; i++) {
+            bounds[i] = (int) ((long) gallerySize * i / rangeCount);
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,180 @@
+import eu.id3.face.*;
+
+import java.util.List;
+
+public class IdentificationCLI {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("----------------------------------");
+        System.out.println("id3 Face Samples IdentificationCLI");
+        System.out.println("----------------------------------");
+
+        // This sample shows how to search a probe face among a gallery of enrolled
+        // templates (1:N identification).
+        // Usage: IdentificationCLI [gallery] [probeImage] [candidateCount]
+        //        [fastGallery] [shortlistSize]
+        // A gallery is either a directory of template files or a gallery file
+        // written by BatchEnrollmentCLI.
+        // When a fast gallery is given, the search is also cascaded: the templates of
+        // the same identities enrolled with the lightweight FACE_ENCODER_10B give a
+        // shortlist which is re-scored with the FACE_ENCODER_10A gallery.
+
+        String galleryPath = args.length > 0 ? args[0] : "../data";
+        String probeImagePath = args.length > 1 ? args[1] : "../data/image2.jpg";
+        int candidateCount = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        String fastGalleryPath = args.length > 3 ? args[3] : null;
+        int shortlistSize = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        boolean cascaded = fastGalleryPath != null;
+
+        // Before calling any function of the SDK you must first check a valid license
+        // file.
+        // To get such a file please use the provided activation tool.
+        FaceLicense.checkLicense("../id3Face.lic");
+
+        /**
+         * The Face SDK heavily relies on deep learning and hence requires trained
+         * models to run.
+         * Fill in the correct path to the downloaded models.
+         */
+        String modelPath = "../models";
+        System.out.println("Loading models... ");
+        FaceLibrary.loadModel(modelPath, FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
+        FaceLibrary.loadModel(modelPath, FaceModel.FACE_ENCODER_10A, ProcessingUnit.CPU);
+        if (cascaded) {
+            FaceLibrary.loadModel(modelPath, FaceModel.FACE_ENCODER_10B, ProcessingUnit.CPU);
+        }
+        System.out.println("Done.\n");
+
+        /**
+         * Load the gallery.
+         * Every template file exported with FaceTemplate.toFile() in the gallery
+         * directory is enrolled, using its file name as identifier. RecognitionCLI
+         * writes such a file in ../data/template1.bin. Gallery files found in the
+         * directory are skipped; a gallery file can be given instead of the
+         * directory.
+         */
+        System.out.println("Loading gallery from " + galleryPath + "... ");
+        TemplateGallery gallery = TemplateGallery.fromPath(galleryPath);
+        System.out.println("Done: " + gallery.size() + " templates.\n");
+        TemplateGallery fastGallery = null;
+        if (cascaded) {
+            System.out.println("Loading fast gallery from " + fastGalleryPath + "... ");
+            fastGallery = TemplateGallery.fromPath(fastGalleryPath);
+            System.out.println("Done: " + fastGallery.size() + " templates.\n");
+        }
+
+        /**
+         * Create the probe template from the largest face of the probe image.
+         */
+        System.out.println("Creating probe template... ");
+        Image image = Image.fromFile(probeImagePath, PixelFormat.BGR_24_BITS);
+        // Resize to 512 because of detector limit.
+        image.resize(512, 0);
+        FaceDetector faceDetector = new FaceDetector();
+        faceDetector.setModel(FaceModel.FACE_DETECTOR_4B);
+        faceDetector.setThreadCount(4);
+        FaceEncoder faceEncoder = new FaceEncoder();
+        faceEncoder.setModel(FaceModel.FACE_ENCODER_10A);
+        faceEncoder.setThreadCount(4);
+        DetectedFaceList detectedFaceList = faceDetector.detectFaces(image);
+        if (detectedFaceList.getCount() == 0) {
+            System.out.println("No face detected in the probe image.");
+            return;
+        }
+        DetectedFace detectedFace = detectedFaceList.getLargestFace();
+        FaceTemplate probeTemplate = faceEncoder.createTemplate(image, detectedFace);
+        FaceEncoder fastFaceEncoder = null;
+        FaceTemplate fastProbeTemplate = null;
+        long fastEncodingElapsed = 0;
+        if (cascaded) {
+            fastFaceEncoder = new FaceEncoder();
+            fastFaceEncoder.setModel(FaceModel.FACE_ENCODER_10B);
+            fastFaceEncoder.setThreadCount(4);
+            long encodingStart = System.nanoTime();
+            fastProbeTemplate = fastFaceEncoder.createTemplate(image, detectedFace);
+            fastEncodingElapsed = System.nanoTime() - encodingStart;
+        }
+        detectedFace.close();
+        detectedFaceList.close();
+        image.close();
+        System.out.println("Done.\n");
+
+        /**
+         * Search the gallery.
+         * The engine splits the gallery across all CPU cores, each core owning its
+         * own FaceMatcher. The partitioning strategy can be changed, for instance
+         * GalleryPartitioner.chunked(4096) balances the load better when the
+         * machine runs other workloads.
+         */
+        System.out.println("Searching gallery... ");
+        IdentificationEngine engine = new IdentificationEngine(gallery);
+        long start = System.nanoTime();
+        List<IdentificationCandidate> candidates = engine.search(probeTemplate, candidateCount);
+        long elapsed = System.nanoTime() - start;
+        System.out.println("Done in " + elapsed / 1000 + " us using " + engine.getWorkerCount() + " workers.\n");
+
+        printCandidates(candidates);
+
+        if (cascaded) {
+            /**
+             * Cascaded search.
+             * The fast gallery is scanned entirely to keep a shortlist, then only the
+             * shortlisted identities are compared with the templates of the gallery
+             * searched above. The cascade also encodes the probe with the fast
+             * encoder, which is counted in its time. Whether it is faster than the
+             * search above depends on the cost of a comparison with each encoder: run
+             * the EncoderBenchmark of the benchmark module to compare them. The first
+             * candidates of both searches should be the same.
+             */
+            System.out.println("\nSearching fast gallery with a shortlist of " + shortlistSize + "... ");
+            CascadedIdentificationEngine cascadedEngine = new CascadedIdentificationEngine(fastGallery, gallery,
+                    shortlistSize);
+            start = System.nanoTime();
+            List<IdentificationCandidate> cascadedCandidates = cascadedEngine.search(fastProbeTemplate,
+                    probeTemplate, candidateCount);
+            long cascadedElapsed = System.nanoTime() - start;
+            System.out.println("Done in " + (fastEncodingElapsed + cascadedElapsed) / 1000 + " us ("
+                    + fastEncodingElapsed / 1000 + " us to encode the fast probe, " + cascadedElapsed / 1000
+                    + " us to search), against " + elapsed / 1000 + " us for the search above.\n");
+            printCandidates(cascadedCandidates);
+
+            boolean sameFirst = cascadedCandidates.isEmpty() ? candidates.isEmpty()
+                    : !candidates.isEmpty()
+                    && cascadedCandidates.get(0).getId().equals(candidates.get(0).getId());
+            System.out.println("\nFirst candidate " + (sameFirst ? "preserved" : "differs") + " by the cascade.");
+
+            cascadedEngine.close();
+            fastProbeTemplate.close();
+            fastFaceEncoder.close();
+            fastGallery.close();
+        }
+
+        /**
+         * id3 Face SDK Java objects hold native memory and must manually released
+         */
+        engine.close();
+        gallery.close();
+        probeTemplate.close();
+        faceEncoder.close();
+        faceDetector.close();
+
+        /**
+         * Unload models
+         */
+        if (cascaded) {
+            FaceLibrary.unloadModel(FaceModel.FACE_ENCODER_10B, ProcessingUnit.CPU);
+        }
+        FaceLibrary.unloadModel(FaceModel.FACE_ENCODER_10A, ProcessingUnit.CPU);
+        FaceLibrary.unloadModel(FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
+
+        System.out.println("Sample terminated successfully.");
+    }
+
+    private static void printCandidates(List<IdentificationCandidate> candidates) {
+        for (int i = 0; i < candidates.size(); i++) {
+            IdentificationCandidate candidate = candidates.get(i);
+            String decision = candidate.getScore() > FaceMatcherThreshold.FMR10000.getValue() ? "match" : "no match";
+            System.out.println("\t#" + (i + 1) + "\t" + candidate.getId() + "\t" + candidate.getScore() + "\t" + decision);
+        }
+    }
+}
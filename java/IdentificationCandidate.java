@@ -0,0 +1,45 @@
+/**
+ * A gallery entry returned by a 1:N search, ordered by decreasing score.
+ */
+public class IdentificationCandidate implements Comparable<IdentificationCandidate> {
+    private final String id;
+    private final int index;
+    private final int score;
+
+    public IdentificationCandidate(String id, int index, int score) {
+        this.id = id;
+        this.index = index;
+        this.score = score;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Position of the matching template in the gallery.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Matching score between 0 and 65535.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    @Override
+    public int compareTo(IdentificationCandidate other) {
+        if (score != other.score) {
+            return Integer.compare(other.score, score);
+        }
+        return Integer.compare(index, other.index);
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + score + ")";
+    }
+}
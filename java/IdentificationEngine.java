@@ -0,0 +1,162 @@
+import eu.id3.face.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 1:N search engine comparing a probe template to every template of a gallery.
+ *
+ * The gallery is split into ranges by a GalleryPartitioner and the ranges are
+ * scanned concurrently by a fixed pool of worker threads. Each worker owns its
+ * own FaceMatcher instance so that no matcher is shared between threads.
+ */
+public class IdentificationEngine implements AutoCloseable {
+    private final TemplateGallery gallery;
+    private final GalleryPartitioner partitioner;
+    private final int workerCount;
+    private final ExecutorService executor;
+    private final List<FaceMatcher> matchers = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<FaceMatcher> workerMatcher = ThreadLocal.withInitial(() -> {
+        FaceMatcher faceMatcher = new FaceMatcher();
+        matchers.add(faceMatcher);
+        return faceMatcher;
+    });
+
+    /**
+     * Creates an engine using one worker per available CPU core.
+     */
+    public IdentificationEngine(TemplateGallery gallery) {
+        this(gallery, Runtime.getRuntime().availableProcessors(), GalleryPartitioner.perWorker());
+    }
+
+    public IdentificationEngine(TemplateGallery gallery, int workerCount, GalleryPartitioner partitioner) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive.");
+        }
+        this.gallery = gallery;
+        this.partitioner = partitioner;
+        this.workerCount = workerCount;
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "identification-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Returns the maxCandidates gallery entries with the highest scores, sorted by
+     * decreasing score.
+     */
+    public List<IdentificationCandidate> search(FaceTemplate probe, int maxCandidates) {
+        if (maxCandidates <= 0) {
+            throw new IllegalArgumentException("Candidate count must be positive.");
+        }
+        FaceTemplate[] templates = gallery.getTemplates();
+        if (templates.length == 0) {
+            return new ArrayList<>();
+        }
+        int[] bounds = partitioner.partition(templates.length, workerCount);
+
+        List<Future<TopScores>> futures = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            final int begin = bounds[i];
+            final int end = bounds[i + 1];
+            futures.add(executor.submit(() -> scan(probe, templates, begin, end, maxCandidates)));
+        }
+
+        TopScores merged = new TopScores(maxCandidates);
+        try {
+            for (Future<TopScores> future : futures) {
+                merged.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Identification interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return merged.toCandidates(gallery);
+    }
+
+    private TopScores scan(FaceTemplate probe, FaceTemplate[] templates, int begin, int end, int maxCandidates) {
+        FaceMatcher faceMatcher = workerMatcher.get();
+        TopScores topScores = new TopScores(maxCandidates);
+        for (int i = begin; i < end; i++) {
+            topScores.offer(i, faceMatcher.compareTemplates(probe, templates[i]));
+        }
+        return topScores;
+    }
+
+    /**
+     * Stops the workers and releases the matchers they own.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        synchronized (matchers) {
+            for (FaceMatcher faceMatcher : matchers) {
+                faceMatcher.close();
+            }
+            matchers.clear();
+        }
+    }
+
+    /**
+     * Bounded list of the best scores kept sorted by decreasing score. Candidates
+     * are inserted without allocation since maxCandidates is small compared to
+     * the gallery size.
+     */
+    static class TopScores {
+        private final int[] indexes;
+        private final int[] scores;
+        private int count = 0;
+
+        TopScores(int capacity) {
+            indexes = new int[capacity];
+            scores = new int[capacity];
+        }
+
+        void offer(int index, int score) {
+            if (count == scores.length && score <= scores[count - 1]) {
+                return;
+            }
+            int position = count < scores.length ? count++ : count - 1;
+            while (position > 0 && scores[position - 1] < score) {
+                scores[position] = scores[position - 1];
+                indexes[position] = indexes[position - 1];
+                position--;
+            }
+            scores[position] = score;
+            indexes[position] = index;
+        }
+
+        void merge(TopScores other) {
+            for (int i = 0; i < other.count; i++) {
+                offer(other.indexes[i], other.scores[i]);
+            }
+        }
+
+        List<IdentificationCandidate> toCandidates(TemplateGallery gallery) {
+            List<IdentificationCandidate> candidates = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                candidates.add(new IdentificationCandidate(gallery.getId(indexes[i]), indexes[i], scores[i]));
+            }
+            Collections.sort(candidates);
+            return candidates;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import eu.id3.face.*;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Loads models on first use and shares them between their users.
+ *
+ * A model is loaded by the first acquire() and stays loaded as long as a handle
+ * on it is open. When its last handle is closed it becomes idle: it remains
+ * loaded so that the next user does not pay for loading it again, unless the
+ * memory budget is exceeded, in which case the least recently used idle models
+ * are unloaded first.
+ */
+public class ModelRegistry implements AutoCloseable {
+    private final String modelPath;
+    private final ProcessingUnit processingUnit;
+    private final long memoryBudget;
+    private final Map<FaceModel, Entry> entries = new EnumMap<>(FaceModel.class);
+    private final LinkedHashMap<FaceModel, Entry> idleEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes = 0;
+
+    /**
+     * memoryBudget is the total size in bytes of the model files that may stay
+     * loaded. Models in use are never unloaded, even above the budget.
+     */
+    public ModelRegistry(String modelPath, ProcessingUnit processingUnit, long memoryBudget) {
+        this.modelPath = modelPath;
+        this.processingUnit = processingUnit;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Name of the file of a model in the model directory, for instance
+     * face_detector_v4b.id3nn for FACE_DETECTOR_4B.
+     */
+    public static String getFileName(FaceModel model) {
+        String name = model.name().toLowerCase(Locale.ROOT);
+        int version = name.lastIndexOf('_');
+        return name.substring(0, version) + "_v" + name.substring(version + 1) + ".id3nn";
+    }
+
+    /**
+     * Loads the model if needed and returns a handle keeping it loaded until the
+     * handle is closed.
+     */
+    public synchronized Handle acquire(FaceModel model) {
+        Entry entry = entries.get(model);
+        if (entry == null) {
+            long size = new File(modelPath, getFileName(model)).length();
+            evictIdle(memoryBudget - size);
+            FaceLibrary.loadModel(modelPath, model, processingUnit);
+            entry = new Entry(size);
+            entries.put(model, entry);
+            residentBytes += size;
+        } else if (entry.users == 0) {
+            idleEntries.remove(model);
+        }
+        entry.users++;
+        return new Handle(this, model);
+    }
+
+    private synchronized void release(FaceModel model) {
+        Entry entry = entries.get(model);
+        if (entry == null || entry.users == 0) {
+            return;
+        }
+        entry.users--;
+        if (entry.users == 0) {
+            idleEntries.put(model, entry);
+            evictIdle(memoryBudget);
+        }
+    }
+
+    /**
+     * Unloads idle models, least recently used first, until the resident size
+     * fits in targetBytes.
+     */
+    private void evictIdle(long targetBytes) {
+        Iterator<Map.Entry<FaceModel, Entry>> iterator = idleEntries.entrySet().iterator();
+        while (residentBytes > targetBytes && iterator.hasNext()) {
+            Map.Entry<FaceModel, Entry> idle = iterator.next();
+            iterator.remove();
+            unload(idle.getKey());
+        }
+    }
+
+    private void unload(FaceModel model) {
+        Entry entry = entries.remove(model);
+        FaceLibrary.unloadModel(model, processingUnit);
+        residentBytes -= entry.size;
+    }
+
+    public synchronized boolean isLoaded(FaceModel model) {
+        return entries.containsKey(model);
+    }
+
+    public synchronized int getLoadedCount() {
+        return entries.size();
+    }
+
+    /**
+     * Total size in bytes of the loaded model files.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Unloads every model, whether it is in use or not.
+     */
+    @Override
+    public synchronized void close() {
+        for (FaceModel model : entries.keySet().toArray(new FaceModel[0])) {
+            unload(model);
+        }
+        idleEntries.clear();
+    }
+
+    private static class Entry {
+        final long size;
+        int users = 0;
+
+        Entry(long size) {
+            this.size = size;
+        }
+    }
+
+    /**
+     * Keeps a model loaded until closed.
+     */
+    public static class Handle implements AutoCloseable {
+        private final ModelRegistry registry;
+        private final FaceModel model;
+        private boolean closed = false;
+
+        private Handle(ModelRegistry registry, FaceModel model) {
+            this.registry = registry;
+            this.model = model;
+        }
+
+        public FaceModel getModel() {
+            return model;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                registry.release(model);
+            }
+        }
+    }
+}
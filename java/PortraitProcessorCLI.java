@@ -9,6 +9,7 @@ public class PortraitProcessorCLI {
 
         // This sample shows how to use PortraitProcessor to compute face ICAO and
         // landmarks values.
+        // Usage: PortraitProcessorCLI [profile]
 
         // Before calling any function of the SDK you must first check a valid license
         // file.
@@ -22,26 +23,25 @@ public class PortraitProcessorCLI {
          */
         String modelPath = "../models";
         /**
-         * Once a model is loaded in the desired processing unit (CPU or GPU) several
-         * instances of the associated processor can be created.
-         * For instance in this sample, we load a detector and an encoder.
+         * A quality profile lists the estimations the application needs, for instance
+         * QualityProfile.BORDER_KIOSK only checks the ICAO geometry and occlusions.
+         * The engine only loads the models these estimations depend on, and only runs
+         * these estimations on each portrait.
+         * The profile can be given as argument: "full", "border-kiosk" or a list of
+         * checks such as "AGE,GEOMETRY,PHOTOGRAPHIC_QUALITY".
          */
-        System.out.println("Loading models... ");
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_ENCODER_10B, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_LANDMARKS_ESTIMATOR_2A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_POSE_ESTIMATOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_COLOR_BASED_PAD_4A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_AGE_ESTIMATOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_EXPRESSION_CLASSIFIER_1A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_OCCLUSION_DETECTOR_2A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.EYE_GAZE_ESTIMATOR_2A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.EYE_OPENNESS_DETECTOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.EYE_REDNESS_DETECTOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_MASK_CLASSIFIER_2A, ProcessingUnit.CPU);
-        FaceLibrary.loadModel(modelPath, FaceModel.FACE_BACKGROUND_UNIFORMITY_1A, ProcessingUnit.CPU);
-        System.out.println("Done.\n");
+        QualityProfile profile = args.length > 0 ? QualityProfile.parse(args[0]) : QualityProfile.FULL;
+        /**
+         * Models are loaded by the registry when they are first needed and shared
+         * between the engines using them. Idle models are unloaded, least recently
+         * used first, when the loaded models exceed the memory budget (in bytes).
+         */
+        ModelRegistry registry = new ModelRegistry(modelPath, ProcessingUnit.CPU, 512L * 1024 * 1024);
+        System.out.println("Loading models for profile " + profile + "... ");
+        PortraitQualityEngine engine = new PortraitQualityEngine(profile, registry);
+        engine.acquireModels();
+        System.out.println("Done: " + registry.getLoadedCount() + " models loaded ("
+                + registry.getResidentBytes() / 1024 + " KB).\n");
         /**
          * Load sample image from file.
          */
@@ -52,44 +52,45 @@ public class PortraitProcessorCLI {
         // Resize to 512 because of detector limit.
         image.resize(512, 0);
 
-        System.out.println("Initializing portrait from image... ");
-        PortraitProcessor processor = new PortraitProcessor();
-        Portrait portrait = processor.createPortrait(image);
+        System.out.println("Initializing portrait from image and running estimations... ");
+        Portrait portrait = engine.analyze(image);
         System.out.println("Done.\n");
 
         /**
          * Get age estimation.
          */
-        System.out.print("Estimating age... ");
-        processor.estimateAge(portrait);
-        int age = portrait.getAge();
-        System.out.println("\t\t\t" + age + " years");
+        if (profile.contains(QualityCheck.AGE)) {
+            int age = portrait.getAge();
+            System.out.println("Age: \t\t\t\t" + age + " years");
+        }
         /**
          * Get expression estimation.
          */
-        System.out.print("Estimating expression... ");
-        processor.estimateExpression(portrait);
-        FaceExpression expression = portrait.getExpression();
-        System.out.println("\t\t" + expression.toString());
+        if (profile.contains(QualityCheck.EXPRESSION)) {
+            FaceExpression expression = portrait.getExpression();
+            System.out.println("Expression: \t\t\t" + expression.toString());
+        }
         /**
          * Get background uniformity.
          */
-        System.out.println("Estimating background uniformity... ");
-        processor.estimateBackgroundUniformity(portrait);
-        BackgroundUniformity bgUniformity = portrait.getBackgroundUniformity();
-        System.out.println("\tColor uniformity:         \t" + bgUniformity.colorUniformity);
-        System.out.println("\tStructure uniformity:     \t" + bgUniformity.structureUniformity);
+        if (profile.contains(QualityCheck.BACKGROUND_UNIFORMITY)) {
+            System.out.println("Background uniformity: ");
+            BackgroundUniformity bgUniformity = portrait.getBackgroundUniformity();
+            System.out.println("\tColor uniformity:         \t" + bgUniformity.colorUniformity);
+            System.out.println("\tStructure uniformity:     \t" + bgUniformity.structureUniformity);
+        }
         /**
          * Get ICAO geometric attributes.
          */
-        System.out.println("Computing ICAO geometric attributes... ");
-        processor.estimateGeometryQuality(portrait);
-        GeometricAttributes geomAttributes = portrait.getGeometricAttributes();
-        System.out.println("\tHead image height ratio:  \t" + geomAttributes.headImageHeightRatio);
-        System.out.println("\tHead image width ratio:   \t" + geomAttributes.headImageWidthRatio);
-        System.out.println("\tHorizontal position:      \t" + geomAttributes.horizontalPosition);
-        System.out.println("\tVertical position:        \t" + geomAttributes.verticalPosition);
-        System.out.println("\tResolution:               \t" + geomAttributes.resolution);
+        if (profile.contains(QualityCheck.GEOMETRY)) {
+            System.out.println("ICAO geometric attributes: ");
+            GeometricAttributes geomAttributes = portrait.getGeometricAttributes();
+            System.out.println("\tHead image height ratio:  \t" + geomAttributes.headImageHeightRatio);
+            System.out.println("\tHead image width ratio:   \t" + geomAttributes.headImageWidthRatio);
+            System.out.println("\tHorizontal position:      \t" + geomAttributes.horizontalPosition);
+            System.out.println("\tVertical position:        \t" + geomAttributes.verticalPosition);
+            System.out.println("\tResolution:               \t" + geomAttributes.resolution);
+        }
         /**
          * Get face landmarks.
          */
@@ -98,79 +99,74 @@ public class PortraitProcessorCLI {
         /**
          * Get face attributes.
          */
-        System.out.println("Detecting occlusions... ");
-        processor.detectOcclusions(portrait);
-        System.out.println("Done.");
-
-        System.out.println("Estimating face attributes... ");
-        processor.estimateFaceAttributes(portrait);
-
-        EyeGaze eyeGaze = portrait.getEyeGaze();
-        System.out.println("\tLeft eye x gaze:          \t" + eyeGaze.leftEyeXGaze + "°");
-        System.out.println("\tLeft eye y gaze:          \t" + eyeGaze.leftEyeYGaze + "°");
-        System.out.println("\tRight eye x gaze:         \t" + eyeGaze.rightEyeXGaze + "°");
-        System.out.println("\tRight eye y gaze:         \t" + eyeGaze.rightEyeYGaze + "°");
-
-        int leftEyeVisibilityScore = portrait.getLeftEyeVisibility();
-        int leftEyeOpeningScore = portrait.getLeftEyeOpening();
-        int rightEyeVisibilityScore = portrait.getRightEyeVisibility();
-        int rightEyeOpeningScore = portrait.getRightEyeOpening();
-        System.out.println("\tLeft eye visibility score:    \t" + leftEyeVisibilityScore);
-        System.out.println("\tLeft eye opening score:       \t" + leftEyeOpeningScore);
-        System.out.println("\tRight eye visibility score:   \t" + rightEyeVisibilityScore);
-        System.out.println("\tRight eye opening score:      \t" + rightEyeOpeningScore);
-
-        int genderMaleScore = portrait.getGenderMale();
-        int glassesScore = portrait.getGlasses();
-        int hatScore = portrait.getHat();
-        int lookStraightScore = portrait.getLookStraightScore();
-        int makeupScore = portrait.getMakeup();
-        int mouthOpeningScore = portrait.getMouthOpening();
-        int mouthVisibilityScore = portrait.getMouthVisibility();
-        int noseVisibilityScore = portrait.getNoseVisibility();
-        int smileScore = portrait.getSmile();
-        int faceMaskScore = portrait.getFaceMask();
-        System.out.println("\tGender male score:            \t" + genderMaleScore);
-        System.out.println("\tGlasses score:                \t" + glassesScore);
-        System.out.println("\tHat score:                    \t" + hatScore);
-        System.out.println("\tLook Straight score:          \t" + lookStraightScore);
-        System.out.println("\tMakeup score:                 \t" + makeupScore);
-        System.out.println("\tMouth opening score:          \t" + mouthOpeningScore);
-        System.out.println("\tMouth visibility score:       \t" + mouthVisibilityScore);
-        System.out.println("\tNose visibility score:        \t" + noseVisibilityScore);
-        System.out.println("\tSmile score:                  \t" + smileScore);
-        System.out.println("\tFace mask score:              \t" + faceMaskScore);
+        if (profile.contains(QualityCheck.OCCLUSIONS)) {
+            System.out.println("Occlusions: ");
+            int leftEyeVisibilityScore = portrait.getLeftEyeVisibility();
+            int rightEyeVisibilityScore = portrait.getRightEyeVisibility();
+            int mouthVisibilityScore = portrait.getMouthVisibility();
+            int noseVisibilityScore = portrait.getNoseVisibility();
+            System.out.println("\tLeft eye visibility score:    \t" + leftEyeVisibilityScore);
+            System.out.println("\tRight eye visibility score:   \t" + rightEyeVisibilityScore);
+            System.out.println("\tMouth visibility score:       \t" + mouthVisibilityScore);
+            System.out.println("\tNose visibility score:        \t" + noseVisibilityScore);
+        }
+
+        if (profile.contains(QualityCheck.FACE_ATTRIBUTES)) {
+            System.out.println("Face attributes: ");
+            EyeGaze eyeGaze = portrait.getEyeGaze();
+            System.out.println("\tLeft eye x gaze:          \t" + eyeGaze.leftEyeXGaze + "°");
+            System.out.println("\tLeft eye y gaze:          \t" + eyeGaze.leftEyeYGaze + "°");
+            System.out.println("\tRight eye x gaze:         \t" + eyeGaze.rightEyeXGaze + "°");
+            System.out.println("\tRight eye y gaze:         \t" + eyeGaze.rightEyeYGaze + "°");
+
+            int leftEyeOpeningScore = portrait.getLeftEyeOpening();
+            int rightEyeOpeningScore = portrait.getRightEyeOpening();
+            System.out.println("\tLeft eye opening score:       \t" + leftEyeOpeningScore);
+            System.out.println("\tRight eye opening score:      \t" + rightEyeOpeningScore);
+
+            int genderMaleScore = portrait.getGenderMale();
+            int glassesScore = portrait.getGlasses();
+            int hatScore = portrait.getHat();
+            int lookStraightScore = portrait.getLookStraightScore();
+            int makeupScore = portrait.getMakeup();
+            int mouthOpeningScore = portrait.getMouthOpening();
+            int smileScore = portrait.getSmile();
+            int faceMaskScore = portrait.getFaceMask();
+            System.out.println("\tGender male score:            \t" + genderMaleScore);
+            System.out.println("\tGlasses score:                \t" + glassesScore);
+            System.out.println("\tHat score:                    \t" + hatScore);
+            System.out.println("\tLook Straight score:          \t" + lookStraightScore);
+            System.out.println("\tMakeup score:                 \t" + makeupScore);
+            System.out.println("\tMouth opening score:          \t" + mouthOpeningScore);
+            System.out.println("\tSmile score:                  \t" + smileScore);
+            System.out.println("\tFace mask score:              \t" + faceMaskScore);
+        }
 
         /**
          * get ICAO criterias statuses.
-         * NOTE: must be called after all estimations
+         * NOTE: estimated after all other estimations of the profile
          */
-        processor.estimatePhotographicQuality(portrait);
-        PortraitQualityCheckpoints icaoCheckpoints = portrait.getQualityCheckpoints();
-        /*
-         * get global quality score
-         * NOTE: must be called after all estimations
+        if (profile.contains(QualityCheck.PHOTOGRAPHIC_QUALITY)) {
+            PortraitQualityCheckpoints icaoCheckpoints = portrait.getQualityCheckpoints();
+            /*
+             * get global quality score
+             * NOTE: must be called after all estimations
+             */
+            int qualityScore = portrait.getQualityScore();
+            System.out.println("Global quality score:           \t" + qualityScore);
+        }
+
+        /**
+         * id3 Face SDK Java objects hold native memory and must manually released.
          */
-        int qualityScore = portrait.getQualityScore();
-        System.out.println("Global quality score:           \t" + qualityScore);
+        portrait.close();
+        image.close();
+        engine.close();
 
         /**
          * Unload models
          */
-        FaceLibrary.unloadModel(FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_ENCODER_10B, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_LANDMARKS_ESTIMATOR_2A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_POSE_ESTIMATOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_COLOR_BASED_PAD_4A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_AGE_ESTIMATOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_EXPRESSION_CLASSIFIER_1A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_OCCLUSION_DETECTOR_2A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.EYE_GAZE_ESTIMATOR_2A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.EYE_OPENNESS_DETECTOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.EYE_REDNESS_DETECTOR_1A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_MASK_CLASSIFIER_2A, ProcessingUnit.CPU);
-        FaceLibrary.unloadModel(FaceModel.FACE_BACKGROUND_UNIFORMITY_1A, ProcessingUnit.CPU);
+        registry.close();
 
         System.out.println("Sample terminated successfully.");
     }
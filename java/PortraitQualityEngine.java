@@ -0,0 +1,78 @@
+import eu.id3.face.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the estimations of a QualityProfile on portraits.
+ *
+ * Only the models the profile depends on are acquired from the ModelRegistry,
+ * on the first analysis, and they are released when the engine is closed.
+ */
+public class PortraitQualityEngine implements AutoCloseable {
+    private final QualityProfile profile;
+    private final ModelRegistry registry;
+    private final List<ModelRegistry.Handle> models = new ArrayList<>();
+    private final PortraitProcessor processor;
+
+    public PortraitQualityEngine(QualityProfile profile, ModelRegistry registry) {
+        this.profile = profile;
+        this.registry = registry;
+        this.processor = new PortraitProcessor();
+    }
+
+    public QualityProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Acquires the models of the profile. This is done by the first analysis but
+     * can be called beforehand to avoid paying for it on the first portrait.
+     */
+    public synchronized void acquireModels() {
+        if (models.isEmpty()) {
+            for (FaceModel model : profile.getRequiredModels()) {
+                models.add(registry.acquire(model));
+            }
+        }
+    }
+
+    public synchronized int getAcquiredModelCount() {
+        return models.size();
+    }
+
+    /**
+     * Creates a portrait from the image and runs the checks of the profile on it.
+     */
+    public Portrait analyze(Image image) {
+        acquireModels();
+        Portrait portrait = processor.createPortrait(image);
+        analyze(portrait);
+        return portrait;
+    }
+
+    /**
+     * Runs the checks of the profile and their prerequisites on an existing
+     * portrait, each check after its prerequisites.
+     */
+    public void analyze(Portrait portrait) {
+        acquireModels();
+        for (QualityCheck check : profile.getResolvedChecks()) {
+            check.run(processor, portrait);
+        }
+    }
+
+    /**
+     * id3 Face SDK Java objects hold native memory and must manually released.
+     * The models become idle in the registry, which unloads them when it needs
+     * room for other models.
+     */
+    @Override
+    public synchronized void close() {
+        processor.close();
+        for (ModelRegistry.Handle model : models) {
+            model.close();
+        }
+        models.clear();
+    }
+}
@@ -0,0 +1,279 @@
+import eu.id3.face.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Fixed size pool of pre-configured processors (FaceDetector, FaceEncoder,
+ * PortraitProcessor...) leased to concurrent callers.
+ *
+ * Processor instances must not be used by several threads at the same time, so
+ * a server handling concurrent requests needs several instances. Two settings
+ * drive the CPU usage:
+ * - the pool size: number of requests processed concurrently,
+ * - the thread count of each processor (intra-op threads): number of threads
+ * used to process a single request.
+ * Their product should not exceed the number of cores. For throughput, prefer
+ * many single-threaded processors (see recommendedPoolSize). For the latency of
+ * a single request, prefer one processor using all the cores. The crossover on a
+ * given machine can be measured with ProcessorPoolBenchmarkCLI.
+ *
+ * Usage:
+ * <pre>
+ * try (ProcessorPool.Lease&lt;FaceDetector&gt; lease = detectorPool.lease()) {
+ *     DetectedFaceList faces = lease.get().detectFaces(image);
+ * }
+ * </pre>
+ */
+public class ProcessorPool<T extends AutoCloseable> implements AutoCloseable {
+    /**
+     * Default intra-op thread count of pooled processors. With one thread per
+     * processor the pool scales with the number of concurrent requests.
+     */
+    public static final int DEFAULT_THREAD_COUNT = 1;
+
+    /**
+     * Interval at which a waiting lease checks whether the pool was closed.
+     */
+    private static final long CLOSE_CHECK_INTERVAL_MS = 100;
+
+    private final BlockingQueue<T> idle;
+    private final List<T> all = new ArrayList<>();
+    private volatile boolean closed = false;
+    private Thread shutdownHook = null;
+
+    /**
+     * Creates size processors with the factory and runs the warm-up action once on
+     * each of them, so that the first requests do not pay for lazy initializations.
+     * If a processor cannot be created or warmed up, the processors already created
+     * are closed before the exception is thrown.
+     */
+    public ProcessorPool(int size, Supplier<T> factory, Consumer<T> warmUp) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive.");
+        }
+        idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                T processor = factory.get();
+                all.add(processor);
+                if (warmUp != null) {
+                    warmUp.accept(processor);
+                }
+                idle.add(processor);
+            }
+        } catch (RuntimeException | Error e) {
+            for (T processor : all) {
+                closeQuietly(processor);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Pool size giving the best throughput for processors using threadCount
+     * intra-op threads: one processor per group of threadCount cores.
+     */
+    public static int recommendedPoolSize(int threadCount) {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, threadCount));
+    }
+
+    public static ProcessorPool<FaceDetector> ofDetectors(int size, int threadCount, FaceModel model, Image warmUpImage) {
+        return new ProcessorPool<>(size, () -> {
+            FaceDetector faceDetector = new FaceDetector();
+            faceDetector.setConfidenceThreshold(70);
+            faceDetector.setModel(model);
+            faceDetector.setThreadCount(threadCount);
+            return faceDetector;
+        }, warmUpImage == null ? null : faceDetector -> faceDetector.detectFaces(warmUpImage).close());
+    }
+
+    /**
+     * The warm-up creates a template of a face covering the middle of warmUpImage.
+     */
+    public static ProcessorPool<FaceEncoder> ofEncoders(int size, int threadCount, FaceModel model, Image warmUpImage) {
+        return new ProcessorPool<>(size, () -> {
+            FaceEncoder faceEncoder = new FaceEncoder();
+            faceEncoder.setModel(model);
+            faceEncoder.setThreadCount(threadCount);
+            return faceEncoder;
+        }, warmUpImage == null ? null : faceEncoder -> {
+            try (DetectedFace warmUpFace = createWarmUpFace(warmUpImage)) {
+                faceEncoder.createTemplate(warmUpImage, warmUpFace).close();
+            }
+        });
+    }
+
+    /**
+     * The warm-up creates a portrait of warmUpImage, which must contain a face, and
+     * estimates its photographic quality.
+     */
+    public static ProcessorPool<PortraitProcessor> ofPortraitProcessors(int size, int threadCount, Image warmUpImage) {
+        return new ProcessorPool<>(size, () -> {
+            PortraitProcessor processor = new PortraitProcessor();
+            processor.setThreadCount(threadCount);
+            return processor;
+        }, warmUpImage == null ? null : processor -> {
+            try (Portrait portrait = processor.createPortrait(warmUpImage)) {
+                processor.estimatePhotographicQuality(portrait);
+            }
+        });
+    }
+
+    /**
+     * Face whose bounds cover the middle half of the image.
+     */
+    private static DetectedFace createWarmUpFace(Image image) {
+        int left = image.getWidth() / 4;
+        int top = image.getHeight() / 4;
+        int right = image.getWidth() - left;
+        int bottom = image.getHeight() - top;
+        DetectedFace face = new DetectedFace();
+        try (Rectangle bounds = new Rectangle()) {
+            bounds.setTopLeft(new Point(left, top));
+            bounds.setTopRight(new Point(right, top));
+            bounds.setBottomRight(new Point(right, bottom));
+            bounds.setBottomLeft(new Point(left, bottom));
+            face.setBounds(bounds);
+        }
+        return face;
+    }
+
+    public int getSize() {
+        return all.size();
+    }
+
+    /**
+     * Waits for an idle processor. Throws IllegalStateException if the pool is closed
+     * while waiting.
+     */
+    public Lease<T> lease() throws InterruptedException {
+        T processor = null;
+        while (processor == null) {
+            processor = poll(CLOSE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+        return new Lease<>(this, processor);
+    }
+
+    /**
+     * Waits at most timeout for an idle processor, returns null on timeout.
+     */
+    public Lease<T> lease(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long remaining = unit.toNanos(timeout);
+        T processor = null;
+        while (processor == null && remaining > 0) {
+            processor = poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(CLOSE_CHECK_INTERVAL_MS)),
+                    TimeUnit.NANOSECONDS);
+            remaining = deadline - System.nanoTime();
+        }
+        return processor == null ? null : new Lease<>(this, processor);
+    }
+
+    /**
+     * Waits at most timeout for an idle processor, so that the callers waiting on a
+     * pool being closed notice it. A processor taken while the pool closes is closed.
+     */
+    private T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        T processor = idle.poll(timeout, unit);
+        if (processor != null && closed) {
+            giveBack(processor);
+            checkOpen();
+        }
+        return processor;
+    }
+
+    /**
+     * Synchronized with close() so that a processor given back while the pool is
+     * closing is either closed here or drained by close().
+     */
+    private synchronized void giveBack(T processor) {
+        if (closed) {
+            closeQuietly(processor);
+        } else {
+            idle.add(processor);
+        }
+    }
+
+    /**
+     * Closes the pool when the JVM shuts down.
+     */
+    public synchronized ProcessorPool<T> closeOnShutdown() {
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(this::close, "processor-pool-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        return this;
+    }
+
+    /**
+     * Closes the idle processors. Leased processors are closed when given back, and
+     * the callers waiting for a lease get an IllegalStateException.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down.
+            }
+        }
+        T processor;
+        while ((processor = idle.poll()) != null) {
+            closeQuietly(processor);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Processor pool is closed.");
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable processor) {
+        try {
+            processor.close();
+        } catch (Exception e) {
+            // Nothing more can be done at this point.
+        }
+    }
+
+    /**
+     * A processor borrowed from the pool, given back on close.
+     */
+    public static class Lease<T extends AutoCloseable> implements AutoCloseable {
+        private final ProcessorPool<T> pool;
+        private T processor;
+
+        private Lease(ProcessorPool<T> pool, T processor) {
+            this.pool = pool;
+            this.processor = processor;
+        }
+
+        public T get() {
+            if (processor == null) {
+                throw new IllegalStateException("Lease is closed.");
+            }
+            return processor;
+        }
+
+        @Override
+        public void close() {
+            if (processor != null) {
+                pool.giveBack(processor);
+                processor = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import eu.id3.face.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ProcessorPoolBenchmarkCLI {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("-------------------------------------------");
+        System.out.println("id3 Face Samples ProcessorPoolBenchmarkCLI");
+        System.out.println("-------------------------------------------");
+
+        // This sample measures the face detection latency and throughput of a
+        // ProcessorPool for several splits of the CPU cores between pool size and
+        // intra-op threads.
+        // Usage: ProcessorPoolBenchmarkCLI [image] [secondsPerConfiguration]
+
+        String imagePath = args.length > 0 ? args[0] : "../data/image1.jpg";
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // Before calling any function of the SDK you must first check a valid license
+        // file.
+        // To get such a file please use the provided activation tool.
+        FaceLicense.checkLicense("../id3Face.lic");
+
+        String modelPath = "../models";
+        System.out.println("Loading models... ");
+        FaceLibrary.loadModel(modelPath, FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
+        System.out.println("Done.\n");
+
+        Image image = Image.fromFile(imagePath, PixelFormat.BGR_24_BITS);
+        // Resize to 512 because of detector limit.
+        image.resize(512, 0);
+
+        /**
+         * Every configuration uses all the cores: poolSize x threadCount = cores.
+         * Each one is measured twice: with a single client submitting requests one at a
+         * time, which gives the latency of a lone request, and with as many clients as
+         * pooled processors, which gives the throughput under load. The single client
+         * is usually fastest with one processor using all the cores, while concurrent
+         * clients are served best by single-threaded processors.
+         */
+        System.out.println("Cores: " + cores + ", " + seconds + " s per configuration.\n");
+        System.out.println("poolSize\tthreadCount\tclients\tthroughput (img/s)\tmean latency (ms)");
+        for (int threadCount = 1; threadCount <= cores; threadCount *= 2) {
+            int poolSize = ProcessorPool.recommendedPoolSize(threadCount);
+            try (ProcessorPool<FaceDetector> pool =
+                         ProcessorPool.ofDetectors(poolSize, threadCount, FaceModel.FACE_DETECTOR_4B, image)) {
+                int[] clientCounts = poolSize == 1 ? new int[]{1} : new int[]{1, poolSize};
+                for (int clientCount : clientCounts) {
+                    Result result = run(pool, image, clientCount, seconds);
+                    System.out.println(String.format(Locale.ROOT, "%d\t\t%d\t\t%d\t%.1f\t\t\t%.2f",
+                            poolSize, threadCount, clientCount, result.throughput, result.meanLatencyMs));
+                }
+            }
+        }
+
+        image.close();
+
+        /**
+         * Unload models
+         */
+        FaceLibrary.unloadModel(FaceModel.FACE_DETECTOR_4B, ProcessingUnit.CPU);
+
+        System.out.println("Sample terminated successfully.");
+    }
+
+    private static Result run(ProcessorPool<FaceDetector> pool, Image image, int clientCount, int seconds)
+            throws InterruptedException {
+        AtomicLong requests = new AtomicLong();
+        AtomicLong latencyNanos = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            Thread client = new Thread(() -> {
+                // Each client works on its own copy of the image.
+                try (Image clientImage = image.clone()) {
+                    while (System.nanoTime() < deadline) {
+                        long begin = System.nanoTime();
+                        try (ProcessorPool.Lease<FaceDetector> lease = pool.lease()) {
+                            lease.get().detectFaces(clientImage).close();
+                        }
+                        latencyNanos.addAndGet(System.nanoTime() - begin);
+                        requests.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        Result result = new Result();
+        result.throughput = requests.get() / (double) seconds;
+        result.meanLatencyMs = requests.get() == 0 ? 0 : latencyNanos.get() / 1e6 / requests.get();
+        return result;
+    }
+
+    static class Result {
+        double throughput;
+        double meanLatencyMs;
+    }
+}
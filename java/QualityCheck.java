@@ -0,0 +1,84 @@
+import eu.id3.face.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A portrait estimation step that a QualityProfile can ask for, with the models
+ * it depends on and the estimations which must run before it.
+ *
+ * Photographic quality is computed from the results of the geometry, occlusion
+ * and face attribute estimations, and presentation attack detection relies on
+ * photographic quality. A QualityProfile asking for a check also runs its
+ * prerequisites, before it. Prerequisites are declared before the checks
+ * depending on them.
+ */
+public enum QualityCheck {
+    AGE(PortraitProcessor::estimateAge,
+            FaceModel.FACE_AGE_ESTIMATOR_1A),
+    EXPRESSION(PortraitProcessor::estimateExpression,
+            FaceModel.FACE_EXPRESSION_CLASSIFIER_1A),
+    BACKGROUND_UNIFORMITY(PortraitProcessor::estimateBackgroundUniformity,
+            FaceModel.FACE_BACKGROUND_UNIFORMITY_1A),
+    /** ICAO geometric attributes, computed from the landmarks of the portrait. */
+    GEOMETRY(PortraitProcessor::estimateGeometryQuality),
+    OCCLUSIONS(PortraitProcessor::detectOcclusions,
+            FaceModel.FACE_OCCLUSION_DETECTOR_2A),
+    FACE_ATTRIBUTES(PortraitProcessor::estimateFaceAttributes,
+            FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A,
+            FaceModel.EYE_GAZE_ESTIMATOR_2A,
+            FaceModel.EYE_OPENNESS_DETECTOR_1A,
+            FaceModel.EYE_REDNESS_DETECTOR_1A,
+            FaceModel.FACE_MASK_CLASSIFIER_2A),
+    /** ICAO checkpoints statuses and global quality score of the estimations above. */
+    PHOTOGRAPHIC_QUALITY(PortraitProcessor::estimatePhotographicQuality,
+            requires(GEOMETRY, OCCLUSIONS, FACE_ATTRIBUTES)),
+    PRESENTATION_ATTACK(PortraitProcessor::detectPresentationAttack,
+            requires(PHOTOGRAPHIC_QUALITY),
+            FaceModel.FACE_COLOR_BASED_PAD_4A);
+
+    /**
+     * Models needed by PortraitProcessor.createPortrait() whatever the checks.
+     */
+    public static final List<FaceModel> PORTRAIT_MODELS = Collections.unmodifiableList(Arrays.asList(
+            FaceModel.FACE_DETECTOR_4B,
+            FaceModel.FACE_ENCODER_10B,
+            FaceModel.FACE_LANDMARKS_ESTIMATOR_2A,
+            FaceModel.FACE_POSE_ESTIMATOR_1A));
+
+    private final BiConsumer<PortraitProcessor, Portrait> step;
+    private final List<QualityCheck> prerequisites;
+    private final List<FaceModel> models;
+
+    QualityCheck(BiConsumer<PortraitProcessor, Portrait> step, FaceModel... models) {
+        this(step, new QualityCheck[0], models);
+    }
+
+    QualityCheck(BiConsumer<PortraitProcessor, Portrait> step, QualityCheck[] prerequisites,
+                 FaceModel... models) {
+        this.step = step;
+        this.prerequisites = Collections.unmodifiableList(Arrays.asList(prerequisites));
+        this.models = Collections.unmodifiableList(Arrays.asList(models));
+    }
+
+    private static QualityCheck[] requires(QualityCheck... checks) {
+        return checks;
+    }
+
+    public List<FaceModel> getModels() {
+        return models;
+    }
+
+    /**
+     * Checks whose estimations must have run on the portrait before this one.
+     */
+    public List<QualityCheck> getPrerequisites() {
+        return prerequisites;
+    }
+
+    void run(PortraitProcessor processor, Portrait portrait) {
+        step.accept(processor, portrait);
+    }
+}
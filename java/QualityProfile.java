@@ -0,0 +1,127 @@
+import eu.id3.face.*;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The set of QualityCheck a caller needs. A PortraitQualityEngine built from a
+ * profile only loads and runs what these checks depend on: the checks and their
+ * prerequisites.
+ */
+public class QualityProfile {
+    /**
+     * Every estimation made by PortraitProcessorCLI.
+     */
+    public static final QualityProfile FULL = of("full",
+            QualityCheck.AGE,
+            QualityCheck.EXPRESSION,
+            QualityCheck.BACKGROUND_UNIFORMITY,
+            QualityCheck.GEOMETRY,
+            QualityCheck.OCCLUSIONS,
+            QualityCheck.FACE_ATTRIBUTES,
+            QualityCheck.PHOTOGRAPHIC_QUALITY);
+
+    /**
+     * ICAO geometry and occlusions only, as checked by a border control kiosk.
+     * Photographic quality also runs the face attribute estimation it depends on.
+     */
+    public static final QualityProfile BORDER_KIOSK = of("border-kiosk",
+            QualityCheck.GEOMETRY,
+            QualityCheck.OCCLUSIONS,
+            QualityCheck.PHOTOGRAPHIC_QUALITY);
+
+    private final String name;
+    private final Set<QualityCheck> checks;
+    private final Set<QualityCheck> resolvedChecks;
+
+    private QualityProfile(String name, Set<QualityCheck> checks) {
+        this.name = name;
+        this.checks = Collections.unmodifiableSet(checks);
+        Set<QualityCheck> resolved = new LinkedHashSet<>();
+        for (QualityCheck check : checks) {
+            resolve(check, resolved);
+        }
+        this.resolvedChecks = Collections.unmodifiableSet(resolved);
+    }
+
+    /**
+     * Adds the prerequisites of check, then check, to resolved.
+     */
+    private static void resolve(QualityCheck check, Set<QualityCheck> resolved) {
+        if (resolved.contains(check)) {
+            return;
+        }
+        for (QualityCheck prerequisite : check.getPrerequisites()) {
+            resolve(prerequisite, resolved);
+        }
+        resolved.add(check);
+    }
+
+    public static QualityProfile of(String name, QualityCheck... checks) {
+        EnumSet<QualityCheck> set = EnumSet.noneOf(QualityCheck.class);
+        Collections.addAll(set, checks);
+        return new QualityProfile(name, set);
+    }
+
+    /**
+     * Returns a predefined profile from its name, or a profile made of the
+     * comma-separated list of QualityCheck names (e.g. "GEOMETRY,OCCLUSIONS").
+     */
+    public static QualityProfile parse(String value) {
+        if (FULL.name.equals(value)) {
+            return FULL;
+        }
+        if (BORDER_KIOSK.name.equals(value)) {
+            return BORDER_KIOSK;
+        }
+        EnumSet<QualityCheck> set = EnumSet.noneOf(QualityCheck.class);
+        for (String check : value.split(",")) {
+            set.add(QualityCheck.valueOf(check.trim()));
+        }
+        return new QualityProfile(value, set);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether check was asked for by this profile, prerequisites excluded.
+     */
+    public boolean contains(QualityCheck check) {
+        return checks.contains(check);
+    }
+
+    /**
+     * Checks asked for by this profile, prerequisites excluded.
+     */
+    public Set<QualityCheck> getChecks() {
+        return checks;
+    }
+
+    /**
+     * Checks to run, prerequisites included, each one after its prerequisites.
+     */
+    public Set<QualityCheck> getResolvedChecks() {
+        return resolvedChecks;
+    }
+
+    /**
+     * Models to load for this profile, portrait creation models and models of the
+     * prerequisites included.
+     */
+    public Set<FaceModel> getRequiredModels() {
+        Set<FaceModel> models = new LinkedHashSet<>(QualityCheck.PORTRAIT_MODELS);
+        for (QualityCheck check : resolvedChecks) {
+            models.addAll(check.getModels());
+        }
+        return models;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + resolvedChecks;
+    }
+}
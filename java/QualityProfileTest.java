@@ -0,0 +1,62 @@
+import eu.id3.face.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the quality profiles resolve the prerequisites of their checks.
+ * It only uses the SDK enumerations: no license, model or native library is
+ * needed.
+ * Usage: QualityProfileTest
+ */
+public class QualityProfileTest {
+
+    public static void main(String[] args) {
+        borderKioskRunsFaceAttributesBeforePhotographicQuality();
+        presentationAttackRunsPhotographicQualityAndItsPrerequisites();
+        prerequisitesRunBeforeTheirChecks();
+        System.out.println("QualityProfileTest passed.");
+    }
+
+    private static void borderKioskRunsFaceAttributesBeforePhotographicQuality() {
+        QualityProfile profile = QualityProfile.BORDER_KIOSK;
+        List<QualityCheck> checks = new ArrayList<>(profile.getResolvedChecks());
+        check(checks.contains(QualityCheck.FACE_ATTRIBUTES),
+                "border-kiosk must run the face attributes estimation: " + checks);
+        check(checks.indexOf(QualityCheck.FACE_ATTRIBUTES) < checks.indexOf(QualityCheck.PHOTOGRAPHIC_QUALITY),
+                "face attributes must be estimated before photographic quality: " + checks);
+        check(profile.getRequiredModels().contains(FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A),
+                "border-kiosk must load the face attributes models: " + profile.getRequiredModels());
+        check(!profile.contains(QualityCheck.FACE_ATTRIBUTES),
+                "a prerequisite must not be reported as asked for");
+    }
+
+    private static void presentationAttackRunsPhotographicQualityAndItsPrerequisites() {
+        QualityProfile profile = QualityProfile.parse("PRESENTATION_ATTACK");
+        List<QualityCheck> checks = new ArrayList<>(profile.getResolvedChecks());
+        for (QualityCheck expected : new QualityCheck[] { QualityCheck.GEOMETRY, QualityCheck.OCCLUSIONS,
+                QualityCheck.FACE_ATTRIBUTES, QualityCheck.PHOTOGRAPHIC_QUALITY }) {
+            check(checks.contains(expected), "PRESENTATION_ATTACK must run " + expected + ": " + checks);
+        }
+        check(checks.get(checks.size() - 1) == QualityCheck.PRESENTATION_ATTACK,
+                "PRESENTATION_ATTACK must run last: " + checks);
+    }
+
+    private static void prerequisitesRunBeforeTheirChecks() {
+        for (QualityCheck requested : QualityCheck.values()) {
+            List<QualityCheck> checks = new ArrayList<>(QualityProfile.of("test", requested).getResolvedChecks());
+            for (QualityCheck check : checks) {
+                for (QualityCheck prerequisite : check.getPrerequisites()) {
+                    check(checks.indexOf(prerequisite) >= 0 && checks.indexOf(prerequisite) < checks.indexOf(check),
+                            prerequisite + " must run before " + check + ": " + checks);
+                }
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -1,13 +1,17 @@
 import eu.id3.face.*;
 
+import java.io.File;
+import java.io.IOException;
+
 public class RecognitionCLI {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         System.out.println("-------------------------------");
         System.out.println("id3 Face Samples RecognitionCLI");
         System.out.println("-------------------------------");
 
         // This basic sample shows how to encode two faces and compare them.
+        // Usage: RecognitionCLI [galleryFile]
 
         // Before calling any function of the SDK you must first check a valid license
         // file.
@@ -117,6 +121,39 @@ public class RecognitionCLI {
         System.out.println("Export template 2 as buffer...");
         byte[] template2Buffer = faceTemplate2.toBuffer();
 
+        /**
+         * When a gallery file path is given as argument, template 1 is enrolled in
+         * this packed gallery file (created if it does not exist) and template 2 is
+         * then searched among all the templates loaded from it. Template 1 is only
+         * enrolled once: running the sample again does not add duplicates.
+         * The gallery file is memory-mapped so opening it does not depend on the
+         * number of enrolled templates.
+         */
+        if (args.length > 0) {
+            String galleryPath = args[0];
+            System.out.println("Enroll template 1 in gallery file " + galleryPath + "...");
+            byte[] template1Buffer = faceTemplate1.toBuffer();
+            GalleryFile galleryFile = new File(galleryPath).exists()
+                    ? GalleryFile.open(galleryPath)
+                    : GalleryFile.create(galleryPath, template1Buffer.length, 1024);
+            if (galleryFile.find("template1") < 0) {
+                galleryFile.append("template1", template1Buffer);
+            } else {
+                System.out.println("template1 is already enrolled, skipped.");
+            }
+
+            System.out.println("Search template 2 in gallery file...");
+            TemplateGallery gallery = galleryFile.loadGallery();
+            galleryFile.close();
+            IdentificationEngine engine = new IdentificationEngine(gallery);
+            for (IdentificationCandidate candidate : engine.search(faceTemplate2, 5)) {
+                System.out.println("\t" + candidate.getId() + "\t" + candidate.getScore());
+            }
+            engine.close();
+            gallery.close();
+            System.out.println("Done.\n");
+        }
+
         /**
          * When the face match will be performed on a smartcard then it is most likely
          * that
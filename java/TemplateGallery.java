@@ -0,0 +1,108 @@
+import eu.id3.face.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory gallery of enrolled face templates, each one associated to an
+ * identifier.
+ *
+ * Templates are stored in the format produced by FaceTemplate.toBuffer() and
+ * FaceTemplate.toFile().
+ */
+public class TemplateGallery implements AutoCloseable {
+    private final List<String> ids = new ArrayList<>();
+    private final List<FaceTemplate> templates = new ArrayList<>();
+
+    /**
+     * Loads every "*.bin" template file found under the given directory. The file
+     * name without extension is used as identifier. Gallery files, such as those
+     * written by BatchEnrollmentCLI, are skipped.
+     */
+    public static TemplateGallery fromDirectory(String directory) throws IOException {
+        TemplateGallery gallery = new TemplateGallery();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(new File(directory).toPath())) {
+            files = stream
+                    .filter(path -> path.toString().endsWith(".bin") && Files.isRegularFile(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            if (GalleryFile.isGalleryFile(file)) {
+                continue;
+            }
+            String name = file.getFileName().toString();
+            gallery.add(name.substring(0, name.length() - 4), FaceTemplate.fromFile(file.toString()));
+        }
+        return gallery;
+    }
+
+    /**
+     * Loads a gallery file written by GalleryFile, or the template files of a
+     * directory as fromDirectory() does.
+     */
+    public static TemplateGallery fromPath(String path) throws IOException {
+        if (!new File(path).isFile()) {
+            return fromDirectory(path);
+        }
+        try (GalleryFile galleryFile = GalleryFile.open(path)) {
+            return galleryFile.loadGallery();
+        }
+    }
+
+    /**
+     * Adds a template to the gallery. The gallery takes ownership of the template
+     * and closes it with the gallery.
+     */
+    public synchronized int add(String id, FaceTemplate template) {
+        ids.add(id);
+        templates.add(template);
+        return templates.size() - 1;
+    }
+
+    /**
+     * Adds a template from a buffer exported with FaceTemplate.toBuffer().
+     */
+    public int add(String id, byte[] templateBuffer) {
+        return add(id, FaceTemplate.fromBuffer(templateBuffer));
+    }
+
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    public synchronized String getId(int index) {
+        return ids.get(index);
+    }
+
+    public synchronized FaceTemplate getTemplate(int index) {
+        return templates.get(index);
+    }
+
+    /**
+     * Returns a snapshot of the templates so that searches can scan them without
+     * locking the gallery.
+     */
+    public synchronized FaceTemplate[] getTemplates() {
+        return templates.toArray(new FaceTemplate[0]);
+    }
+
+    /**
+     * id3 Face SDK Java objects hold native memory and must manually released
+     */
+    @Override
+    public synchronized void close() {
+        for (FaceTemplate template : templates) {
+            template.close();
+        }
+        templates.clear();
+        ids.clear();
+    }
+}
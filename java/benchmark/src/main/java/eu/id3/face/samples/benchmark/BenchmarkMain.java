@@ -0,0 +1,35 @@
+package eu.id3.face.samples.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar, running org.openjdk.jmh.Main.
+ *
+ * Unless the backend parameter is given on the command line (-p backend=...),
+ * the backend selected by -Dbackend (default "auto") is resolved here and passed
+ * to the benchmarks as the "backend" parameter, so that the results always
+ * record whether the SDK or the stub was measured.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        boolean backendGiven = false;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if ("-p".equals(args[i]) && args[i + 1].startsWith("backend=")) {
+                backendGiven = true;
+            }
+        }
+        if (!backendGiven) {
+            String backend = FaceBackends.resolve(System.getProperty("backend", FaceBackends.AUTO));
+            jmhArgs.add("-p");
+            jmhArgs.add("backend=" + backend);
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,72 @@
+package eu.id3.face.samples.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the template creation and of a single template comparison, for
+ * each encoder model.
+ *
+ * A 1:N search costs one comparison per gallery template, so compareTemplates
+ * gives the per-template cost of a search with the templates of this encoder.
+ * These numbers tell which encoder should give the shortlist of a
+ * CascadedIdentificationEngine and whether the cascade pays off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncoderBenchmark {
+
+    @Param({FaceBackends.AUTO})
+    public String backend;
+
+    @Param({"FACE_ENCODER_10A", "FACE_ENCODER_10B"})
+    public String encoder;
+
+    @Param({"image1.jpg", "image2.jpg"})
+    public String image;
+
+    @Param({"1", "4"})
+    public int threadCount;
+
+    private FaceBackend faceBackend;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        faceBackend = FaceBackends.create(backend);
+        String dataPath = System.getProperty("data", "../../data");
+        faceBackend.setUp(new File(dataPath, image).getPath(), 512, threadCount, encoder);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        faceBackend.close();
+    }
+
+    @Benchmark
+    public int createTemplate() {
+        return faceBackend.createTemplate();
+    }
+
+    @Benchmark
+    public int compareTemplates() {
+        return faceBackend.compareTemplates();
+    }
+}
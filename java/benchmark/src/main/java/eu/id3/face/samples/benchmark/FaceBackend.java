@@ -0,0 +1,35 @@
+package eu.id3.face.samples.benchmark;
+
+/**
+ * The face processing calls made by the samples, behind an interface so that the
+ * benchmarks also run where the SDK is not installed.
+ *
+ * Every call returns a value derived from its result so that JMH cannot remove
+ * it as dead code.
+ */
+public interface FaceBackend extends AutoCloseable {
+
+    String getName();
+
+    /**
+     * Loads the image, resizes it so that its width is imageWidth and configures
+     * the processors with threadCount threads, the templates being created with
+     * the encoder model named encoder (e.g. "FACE_ENCODER_10A"). Everything a
+     * benchmarked call depends on (detected face, templates, portrait) is prepared
+     * here.
+     */
+    void setUp(String imagePath, int imageWidth, int threadCount, String encoder) throws Exception;
+
+    int detectFaces();
+
+    int createTemplate();
+
+    int compareTemplates();
+
+    int createPortrait();
+
+    int estimatePhotographicQuality();
+
+    @Override
+    void close();
+}
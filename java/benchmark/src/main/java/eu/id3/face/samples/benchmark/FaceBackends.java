@@ -0,0 +1,91 @@
+package eu.id3.face.samples.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Selects the backend used by the benchmarks.
+ *
+ * The "sdk" backend calls the id3 Face SDK and the "stub" backend does not. The
+ * "auto" backend is the SDK backend when it was built (see the "sdk" Maven
+ * profile) and the SDK classes and native library can be loaded, the stub backend
+ * otherwise. If the native library turns out to be missing when the SDK backend
+ * is created, a warning is printed and the stub backend is used instead. Other
+ * failures to initialize the SDK backend, such as a license or model error, are
+ * thrown rather than hidden behind the stub.
+ */
+public final class FaceBackends {
+    public static final String AUTO = "auto";
+    public static final String SDK = "sdk";
+    public static final String STUB = "stub";
+
+    private static final String SDK_BACKEND_CLASS = "eu.id3.face.samples.benchmark.SdkBackend";
+    private static final String SDK_CLASS = "eu.id3.face.FaceLibrary";
+
+    private FaceBackends() {
+    }
+
+    /**
+     * Returns the backend name "auto" stands for on this class path, other names
+     * being returned as is.
+     */
+    public static String resolve(String backend) {
+        if (!AUTO.equals(backend)) {
+            return backend;
+        }
+        try {
+            ClassLoader classLoader = FaceBackends.class.getClassLoader();
+            Class.forName(SDK_BACKEND_CLASS, false, classLoader);
+            Class.forName(SDK_CLASS, false, classLoader);
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            System.err.println("id3 Face SDK classes not available (" + e + "), using the stub backend.");
+            return STUB;
+        }
+        try {
+            /* Initializing the SDK classes loads the native library. */
+            Class.forName(SDK_CLASS, true, FaceBackends.class.getClassLoader());
+            return SDK;
+        } catch (ClassNotFoundException | LinkageError e) {
+            printNativeLibraryWarning(e);
+            return STUB;
+        }
+    }
+
+    public static FaceBackend create(String backend) {
+        String resolved = resolve(backend);
+        if (STUB.equals(resolved)) {
+            return new StubBackend();
+        }
+        if (!SDK.equals(resolved)) {
+            throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+        try {
+            return (FaceBackend) Class.forName(SDK_BACKEND_CLASS).getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException e) {
+            if (isNativeLibraryError(e.getCause())) {
+                printNativeLibraryWarning(e.getCause());
+                return new StubBackend();
+            }
+            throw new IllegalStateException("The SDK backend failed to initialize: " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            if (isNativeLibraryError(e)) {
+                printNativeLibraryWarning(e);
+                return new StubBackend();
+            }
+            throw new IllegalStateException("The SDK backend is not available: " + e, e);
+        }
+    }
+
+    private static boolean isNativeLibraryError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnsatisfiedLinkError) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void printNativeLibraryWarning(Throwable e) {
+        System.err.println("WARNING: id3 Face SDK native library not available (" + e
+                + "), using the stub backend. The results do not measure the SDK.");
+    }
+}
@@ -0,0 +1,80 @@
+package eu.id3.face.samples.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the face detection and portrait calls made by the samples, for
+ * several image sizes and processor thread counts. The encoding and matching
+ * calls are measured by EncoderBenchmark.
+ *
+ * Images are read from the data directory of the repository, which can be
+ * changed with -Ddata=path.
+ *
+ * The backend parameter is part of the results: "sdk", "stub", or "auto" when
+ * the benchmarks are not started through BenchmarkMain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FaceBenchmark {
+
+    @Param({FaceBackends.AUTO})
+    public String backend;
+
+    @Param({"image1.jpg", "image2.jpg"})
+    public String image;
+
+    /* The detector works on images of at most 512 pixels, as in the samples. */
+    @Param({"256", "512"})
+    public int imageWidth;
+
+    @Param({"1", "2", "4"})
+    public int threadCount;
+
+    private FaceBackend faceBackend;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        faceBackend = FaceBackends.create(backend);
+        String dataPath = System.getProperty("data", "../../data");
+        faceBackend.setUp(new File(dataPath, image).getPath(), imageWidth, threadCount, "FACE_ENCODER_10A");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        faceBackend.close();
+    }
+
+    @Benchmark
+    public int detectFaces() {
+        return faceBackend.detectFaces();
+    }
+
+    @Benchmark
+    public int createPortrait() {
+        return faceBackend.createPortrait();
+    }
+
+    @Benchmark
+    public int estimatePhotographicQuality() {
+        return faceBackend.estimatePhotographicQuality();
+    }
+}
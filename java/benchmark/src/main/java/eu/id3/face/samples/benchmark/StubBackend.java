@@ -0,0 +1,75 @@
+package eu.id3.face.samples.benchmark;
+
+/**
+ * Backend used when the SDK or its native library is not available.
+ *
+ * It performs a fixed amount of arithmetic per pixel so that the benchmarks keep
+ * the same shape (cost grows with the image size and shrinks with the thread
+ * count) but its timings say nothing about the SDK. The encoder is ignored.
+ */
+public class StubBackend implements FaceBackend {
+    private int[] pixels = new int[0];
+    private int threadCount = 1;
+    private int seed = 0;
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public void setUp(String imagePath, int imageWidth, int threadCount, String encoder) {
+        int imageHeight = imageWidth * 4 / 3;
+        this.pixels = new int[imageWidth * imageHeight];
+        this.threadCount = Math.max(1, threadCount);
+        this.seed = imagePath.hashCode();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = seed ^ (i * 0x9E3779B9);
+        }
+    }
+
+    private int scan(int passes) {
+        int hash = seed;
+        int length = pixels.length / threadCount;
+        for (int pass = 0; pass < passes; pass++) {
+            for (int i = 0; i < length; i++) {
+                hash = hash * 31 + pixels[i];
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public int detectFaces() {
+        return scan(4);
+    }
+
+    @Override
+    public int createTemplate() {
+        return scan(8);
+    }
+
+    @Override
+    public int compareTemplates() {
+        int score = seed;
+        for (int i = 0; i < 512; i++) {
+            score += pixels[i % Math.max(1, pixels.length)] >>> 16;
+        }
+        return score & 0xFFFF;
+    }
+
+    @Override
+    public int createPortrait() {
+        return scan(12);
+    }
+
+    @Override
+    public int estimatePhotographicQuality() {
+        return scan(2);
+    }
+
+    @Override
+    public void close() {
+        pixels = new int[0];
+    }
+}
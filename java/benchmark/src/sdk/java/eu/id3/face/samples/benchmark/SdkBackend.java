@@ -0,0 +1,144 @@
+package eu.id3.face.samples.benchmark;
+
+import eu.id3.face.*;
+
+/**
+ * Backend calling the id3 Face SDK, as done by RecognitionCLI and
+ * PortraitProcessorCLI.
+ *
+ * The license and models paths can be changed with -Dlicense=path and
+ * -Dmodels=path.
+ */
+public class SdkBackend implements FaceBackend {
+    private static final FaceModel[] MODELS = {
+            FaceModel.FACE_DETECTOR_4B,
+            FaceModel.FACE_ENCODER_10A,
+            FaceModel.FACE_ENCODER_10B,
+            FaceModel.FACE_LANDMARKS_ESTIMATOR_2A,
+            FaceModel.FACE_POSE_ESTIMATOR_1A,
+            FaceModel.FACE_OCCLUSION_DETECTOR_2A,
+            FaceModel.FACE_ATTRIBUTES_CLASSIFIER_2A,
+            FaceModel.EYE_GAZE_ESTIMATOR_2A,
+            FaceModel.EYE_OPENNESS_DETECTOR_1A,
+            FaceModel.EYE_REDNESS_DETECTOR_1A,
+            FaceModel.FACE_MASK_CLASSIFIER_2A,
+    };
+    private static boolean initialized = false;
+
+    private Image image;
+    private FaceDetector faceDetector;
+    private FaceEncoder faceEncoder;
+    private FaceMatcher faceMatcher;
+    private PortraitProcessor processor;
+    private DetectedFace detectedFace;
+    private FaceTemplate referenceTemplate;
+    private FaceTemplate probeTemplate;
+    private Portrait portrait;
+
+    /**
+     * Checks the license and loads the models once per JVM. A missing native
+     * library, license or model fails here and is thrown by FaceBackends.
+     */
+    private static synchronized void initialize() {
+        if (initialized) {
+            return;
+        }
+        FaceLicense.checkLicense(System.getProperty("license", "../../id3Face.lic"));
+        String modelPath = System.getProperty("models", "../../models");
+        for (FaceModel model : MODELS) {
+            FaceLibrary.loadModel(modelPath, model, ProcessingUnit.CPU);
+        }
+        initialized = true;
+    }
+
+    public SdkBackend() {
+        initialize();
+    }
+
+    @Override
+    public String getName() {
+        return "sdk";
+    }
+
+    @Override
+    public void setUp(String imagePath, int imageWidth, int threadCount, String encoder) {
+        image = Image.fromFile(imagePath, PixelFormat.BGR_24_BITS);
+        image.resize(imageWidth, 0);
+
+        faceDetector = new FaceDetector();
+        faceDetector.setConfidenceThreshold(70);
+        faceDetector.setModel(FaceModel.FACE_DETECTOR_4B);
+        faceDetector.setThreadCount(threadCount);
+
+        faceEncoder = new FaceEncoder();
+        faceEncoder.setModel(FaceModel.valueOf(encoder));
+        faceEncoder.setThreadCount(threadCount);
+
+        faceMatcher = new FaceMatcher();
+
+        processor = new PortraitProcessor();
+        processor.setThreadCount(threadCount);
+
+        try (DetectedFaceList detectedFaceList = faceDetector.detectFaces(image)) {
+            if (detectedFaceList.getCount() == 0) {
+                throw new IllegalStateException("No face detected in " + imagePath);
+            }
+            detectedFace = detectedFaceList.getLargestFace();
+        }
+        referenceTemplate = faceEncoder.createTemplate(image, detectedFace);
+        probeTemplate = faceEncoder.createTemplate(image, detectedFace);
+
+        /* Photographic quality must be estimated after the estimations it relies on. */
+        portrait = processor.createPortrait(image);
+        processor.detectOcclusions(portrait);
+        processor.estimateFaceAttributes(portrait);
+    }
+
+    @Override
+    public int detectFaces() {
+        try (DetectedFaceList detectedFaceList = faceDetector.detectFaces(image)) {
+            return detectedFaceList.getCount();
+        }
+    }
+
+    @Override
+    public int createTemplate() {
+        try (FaceTemplate template = faceEncoder.createTemplate(image, detectedFace)) {
+            return template.toBuffer().length;
+        }
+    }
+
+    @Override
+    public int compareTemplates() {
+        return faceMatcher.compareTemplates(probeTemplate, referenceTemplate);
+    }
+
+    @Override
+    public int createPortrait() {
+        try (Portrait created = processor.createPortrait(image)) {
+            return created.getQualityScore();
+        }
+    }
+
+    @Override
+    public int estimatePhotographicQuality() {
+        processor.estimatePhotographicQuality(portrait);
+        return portrait.getQualityScore();
+    }
+
+    /**
+     * id3 Face SDK Java objects hold native memory and must manually released
+     */
+    @Override
+    public void close() {
+        portrait.close();
+        probeTemplate.close();
+        referenceTemplate.close();
+        detectedFace.close();
+        processor.close();
+        faceMatcher.close();
+        faceEncoder.close();
+        faceDetector.close();
+        image.close();
+    }
+}
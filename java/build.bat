@@ -10,4 +10,13 @@ javac -cp ".;../sdk/java/eu.id3.face.jar" CompressToWebpCLI.java
 java  -cp ".;../sdk/java/eu.id3.face.jar" CompressToWebpCLI
 
 javac -cp ".;../sdk/java/eu.id3.face.jar" PortraitProcessorCLI.java
-java  -cp ".;../sdk/java/eu.id3.face.jar" PortraitProcessorCLI
\ No newline at end of file
+java  -cp ".;../sdk/java/eu.id3.face.jar" PortraitProcessorCLI
+
+javac -cp ".;../sdk/java/eu.id3.face.jar" IdentificationCLI.java
+java  -cp ".;../sdk/java/eu.id3.face.jar" IdentificationCLI
+
+javac -cp ".;../sdk/java/eu.id3.face.jar" BatchEnrollmentCLI.java
+java  -cp ".;../sdk/java/eu.id3.face.jar" BatchEnrollmentCLI ../data ../data/gallery.bin
+
+javac -cp ".;../sdk/java/eu.id3.face.jar" ProcessorPoolBenchmarkCLI.java
+java  -cp ".;../sdk/java/eu.id3.face.jar" ProcessorPoolBenchmarkCLI
\ No newline at end of file